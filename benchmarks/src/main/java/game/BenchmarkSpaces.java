@@ -0,0 +1,49 @@
+package game;
+
+import org.jspace.SequentialSpace;
+import org.jspace.Space;
+import org.jspace.TemplateField;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+// Spaces for running a GameHandler in a benchmark without the tuples piling up
+class BenchmarkSpaces {
+
+    // Drops everything, for measuring how the tuples are produced
+    // It is always empty, so a blocking get or query waits like on an empty space, until the thread is interrupted
+    static class Discard implements Space {
+        @Override public int size() { return 0; }
+        @Override public boolean put(Object... fields) { return true; }
+        @Override public Object[] get(TemplateField... fields) throws InterruptedException { return never(); }
+        @Override public Object[] getp(TemplateField... fields) { return null; }
+        @Override public List<Object[]> getAll(TemplateField... fields) { return new LinkedList<>(); }
+        @Override public Object[] query(TemplateField... fields) throws InterruptedException { return never(); }
+        @Override public Object[] queryp(TemplateField... fields) { return null; }
+        @Override public List<Object[]> queryAll(TemplateField... fields) { return new LinkedList<>(); }
+
+        private static Object[] never() throws InterruptedException {
+            new CountDownLatch(1).await();
+            return null;
+        }
+    }
+
+    // Only keeps the tuples a player needs to follow the turn handshake, the board updates are dropped
+    static class Handshake extends SequentialSpace {
+        @Override
+        public boolean put(Object... fields) throws InterruptedException {
+            if (fields.length < 2 || !(fields[1] instanceof String)) return true;
+
+            switch ((String) fields[1]) {
+                case "allReady":
+                case "take":
+                case "success":
+                case "invalid":
+                    return super.put(fields);
+                default:
+                    return true;
+            }
+        }
+    }
+}
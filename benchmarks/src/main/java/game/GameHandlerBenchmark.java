@@ -0,0 +1,168 @@
+package game;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.SpaceRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// The hot paths of a game: the rule checks, dealing, the board updates and a full turn through the game space
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameHandlerBenchmark {
+
+    static final String[] PLAYERS = { "Mark", "Talha", "Volkan", "Mikkel" };
+
+    // A dealt game whose tuples are dropped
+    @State(Scope.Thread)
+    public static class Game {
+
+        @Param({ "json", "binary" })
+        String codec;
+
+        @Param({ "snapshot", "delta" })
+        String updates;
+
+        GameHandler handler;
+
+        @Setup(Level.Iteration)
+        public void setup() throws InterruptedException {
+            handler = new GameHandler(new SpaceRepository(), new GameSpace(new BenchmarkSpaces.Discard()), PLAYERS, 42);
+
+            for (int i = 0; i < PLAYERS.length; i++) {
+                handler.codecs[i] = WireCodec.named(codec);
+                handler.deltaPlayers[i] = updates.equals("delta");
+            }
+        }
+    }
+
+    // Every card id against the top card, 65 is Card.IDS
+    @Benchmark
+    @OperationsPerInvocation(65)
+    public void isMoveValid(Game game, Blackhole blackhole) {
+        for (int card = 0; card < Card.IDS; card++) blackhole.consume(game.handler.isMoveValid(card));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(4)
+    public void playerHasMoves(Game game, Blackhole blackhole) {
+        for (int player = 0; player < PLAYERS.length; player++) blackhole.consume(game.handler.playerHasMoves(player));
+    }
+
+    // Every player gets one board update in his codec, as a snapshot or a delta
+    @Benchmark
+    public void sendBoard(Game game) throws InterruptedException {
+        game.handler.topCardChanged = true;
+        game.handler.sendBoard();
+    }
+
+    @Benchmark
+    public String getBoard(Game game) {
+        return game.handler.codecs[0].encodeBoard(game.handler.getBoard());
+    }
+
+    // Dealing seven cards. They are played back on the stack afterwards, so the deck never runs dry
+    @Benchmark
+    public void givePlayerCards(Game game) throws InterruptedException {
+        GameHandler handler = game.handler;
+        handler.givePlayerCards(0, 7);
+
+        Hand dealt = handler.received[0];
+        for (int card = 0; card < Card.IDS; card++) {
+            for (int n = dealt.count(card); n > 0; n--) {
+                handler.takeCard(0, card);
+                handler.putOnStack(card);
+            }
+        }
+
+        handler.received[0].clear();
+        handler.removed[0].clear();
+        handler.handChanges[0] = 0;
+    }
+
+    // Playing the whole pile on the stack and flipping it back
+    @Benchmark
+    public void flipTheStack(Game game) {
+        GameHandler handler = game.handler;
+        while (handler.deck.pileSize() > 0) handler.putOnStack(handler.deck.draw());
+        handler.flipTheStack();
+    }
+
+    // A game played through its space, with the players in the benchmark thread
+    @State(Scope.Thread)
+    public static class Turns {
+        GameSpace space;
+        GameHandler handler;
+        long seed = 0;
+
+        @Setup(Level.Iteration)
+        public void setup() throws InterruptedException {
+            newGame();
+        }
+
+        void newGame() throws InterruptedException {
+            space = new GameSpace(new BenchmarkSpaces.Handshake());
+            handler = new GameHandler(new SpaceRepository(), space, PLAYERS, seed++);
+
+            for (String player : PLAYERS) space.put(player, "ready", "delta");
+            for (String player : PLAYERS) space.get(new ActualField(player), new ActualField("allReady"));
+        }
+
+        // A card the player can play, -1 if there is none
+        // Only called while the handler waits for the player, so its state is not changing
+        int playableCard(int player) {
+            Hand hand = handler.hands[player];
+            for (int card = 0; card < Card.IDS; card++)
+                if (hand.contains(card) && handler.isMoveValid(card)) return card;
+            return -1;
+        }
+    }
+
+    // take -> taken -> action -> success -> ended, a new game is dealt when one is won
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void turnCycle(Turns turns) throws InterruptedException {
+        Object[] take = turns.space.get(new FormalField(String.class), new ActualField("take"), new FormalField(String.class));
+        if (!take[2].equals("alive")) {
+            turns.newGame();
+            return;
+        }
+
+        String playerId = (String) take[0];
+        int player = turns.handler.currentPlayer;
+        int card = turns.playableCard(player);
+
+        turns.space.put(playerId, "taken", "!");
+
+        while (true) {
+            Action action = card < 0 ? new Action(Actions.DRAW, null) : new Action(Actions.PLAY, Card.of(card));
+            turns.space.put(playerId, "action", WireCodec.JSON.encodeAction(action));
+
+            Object[] response = turns.space.get(new ActualField(playerId), new FormalField(String.class));
+            if (response[1].equals("success")) break;
+
+            // The penalty of the turn gave the player a card to play
+            card = turns.playableCard(player);
+        }
+
+        turns.space.put(playerId, "ended");
+    }
+}
@@ -0,0 +1,293 @@
+package server;
+
+import com.google.gson.GsonBuilder;
+import game.Bot;
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.RemoteSpace;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Starts the real server on a loopback gate and plays games on it end to end over RemoteSpace:
+ *  for every game one client creates a lobby, the others join it, everyone says "joined" in the lobby,
+ *  the creator starts the game and every player plays it as a Bot on a connection of its own.
+ *
+ *  Measured, as p50/p99/p999 in microseconds:
+ *  * lobby.create: the createLobby request until its response
+ *  * lobby.join: a joinLobby request until its response
+ *  * game.start: "initGame" until a player has "allReady"
+ *  * turn.action: a player's action until the server's "success" or "invalid", or with --turns pipelined
+ *    the whole turn until its "turned"
+ *
+ *  Usage: java -cp target/benchmarks.jar server.LoadTest [--games 100] [--concurrency 20] [--players 4]
+ *                  [--codec json|binary] [--turns handshake|pipelined] [--port 9101] [--timeout 120] [--out loadtest.json]
+ *  The report is written as JSON to --out, together with the server's own Metrics. The server's console output is dropped while the test runs.
+ */
+public class LoadTest {
+
+    private final int games;  // The number of games to play in total
+    private final int concurrency;  // The number of games played at the same time
+    private final int players;  // The number of players in every game
+    private final String codec;  // The WireCodec the bots use
+    private final boolean pipelined;  // True if the bots send each turn as one message
+    private final int port;
+    private final int timeout;  // Seconds a single game may take before it counts as failed
+
+    private final Latencies lobbyCreate = new Latencies();
+    private final Latencies lobbyJoin = new Latencies();
+    private final Latencies gameStart = new Latencies();
+    private final Latencies turnAction = new Latencies();
+    private final AtomicInteger completed = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+    private final AtomicInteger turns = new AtomicInteger(0);
+
+    private final ExecutorService clients = Executors.newCachedThreadPool();
+    private final AtomicInteger requestIds = new AtomicInteger(0);
+
+    LoadTest(int games, int concurrency, int players, String codec, boolean pipelined, int port, int timeout) {
+        this.games = games;
+        this.concurrency = concurrency;
+        this.players = players;
+        this.codec = codec;
+        this.pipelined = pipelined;
+        this.port = port;
+        this.timeout = timeout;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("games", "100");
+        options.put("concurrency", "20");
+        options.put("players", "4");
+        options.put("codec", "json");
+        options.put("turns", "handshake");
+        options.put("port", "9101");
+        options.put("timeout", "120");
+        options.put("out", "loadtest.json");
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2)))
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        LoadTest test = new LoadTest(
+                Integer.parseInt(options.get("games")),
+                Integer.parseInt(options.get("concurrency")),
+                Integer.parseInt(options.get("players")),
+                options.get("codec"),
+                options.get("turns").equals("pipelined"),
+                Integer.parseInt(options.get("port")),
+                Integer.parseInt(options.get("timeout"))
+        );
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        KamelUnoServer server = new KamelUnoServer("tcp://127.0.0.1:" + test.port + "/?keep");
+        server.start();
+
+        long start = System.nanoTime();
+        test.run();
+        long elapsed = System.nanoTime() - start;
+
+        Map<String, Object> report = test.report(options, elapsed);
+        try (Writer out = new FileWriter(options.get("out"))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(report, out);
+        }
+
+        console.printf("%d of %d games completed, %d failed in %.1f s, report written to %s%n",
+                test.completed.get(), test.games, test.failed.get(), elapsed / 1e9, options.get("out"));
+        console.println(test.lobbyCreate.summary("lobby.create"));
+        console.println(test.lobbyJoin.summary("lobby.join"));
+        console.println(test.gameStart.summary("game.start"));
+        console.println(test.turnAction.summary("turn.action"));
+
+        server.stop();
+        System.exit(test.failed.get() == 0 ? 0 : 1);
+    }
+
+    // Play all the games, at most concurrency of them at a time
+    void run() throws InterruptedException {
+        Semaphore slots = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(games);
+
+        for (int game = 0; game < games; game++) {
+            slots.acquire();
+            int number = game;
+            clients.execute(() -> {
+                try {
+                    playGame(number);
+                    completed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("Game " + number + " failed: " + e);
+                } finally {
+                    slots.release();
+                    done.countDown();
+                }
+            });
+        }
+
+        done.await();
+        clients.shutdownNow();
+    }
+
+    private void playGame(int game) throws Exception {
+        String[] playerIds = new String[players];
+        for (int i = 0; i < players; i++) playerIds[i] = "g" + game + "p" + i;
+
+        // The creator makes the lobby, the others join it
+        String lobbyId = request(playerIds[0], "createLobby", "", lobbyCreate);
+
+        CountDownLatch joined = new CountDownLatch(players);
+        AtomicLong initGameAt = new AtomicLong();
+        Future<?>[] playing = new Future<?>[players];
+
+        for (int i = 0; i < players; i++) {
+            String playerId = playerIds[i];
+            boolean creator = i == 0;
+
+            playing[i] = clients.submit(() -> {
+                if (!creator) request(playerId, "joinLobby", lobbyId, lobbyJoin);
+
+                // Say hello in the lobby and wait until the lobby has seen it
+                RemoteSpace lobby = new RemoteSpace(uri("lobby" + lobbyId));
+                lobby.put("joined", playerId);
+                lobby.put("readChat", playerId);
+                lobby.get(new ActualField(playerId), new ActualField("chat"), new FormalField(String[].class), new FormalField(String[].class));
+                joined.countDown();
+
+                // The creator starts the game once everybody is in
+                if (creator) {
+                    joined.await();
+                    initGameAt.set(System.nanoTime());
+                    lobby.put("initGame", "");
+                }
+
+                lobby.get(new ActualField(playerId), new ActualField("System"), new ActualField("Go!"), new ActualField(""));
+
+                Bot bot = new Bot(new RemoteSpace(uri("game" + lobbyId)), playerId, codec);
+                bot.setActionTimes(turnAction::add);
+                bot.setPipelined(pipelined);
+                bot.play();
+
+                gameStart.add(bot.getAllReadyAt() - initGameAt.get());
+                turns.addAndGet(bot.getTurns());
+                return null;
+            });
+        }
+
+        for (Future<?> player : playing) {
+            try {
+                player.get(timeout, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                for (Future<?> other : playing) other.cancel(true);
+                throw e;
+            }
+        }
+    }
+
+    // Send a tagged lobby request and wait for its response, returns the lobby id in it
+    private String request(String playerId, String verb, String argument, Latencies latencies) throws Exception {
+        RemoteSpace requestSpace = new RemoteSpace(uri("requestSpace"));
+        String requestId = playerId + "-" + requestIds.incrementAndGet();
+
+        long start = System.nanoTime();
+        requestSpace.put("lobby", verb, argument, requestId);
+        Object[] response = requestSpace.get(
+                new ActualField(requestId),
+                new FormalField(String.class),
+                new FormalField(String[].class)
+        );
+        latencies.add(System.nanoTime() - start);
+
+        if (!response[1].equals("oklobby")) throw new IllegalStateException(verb + " " + argument + " was refused");
+        return ((String[]) response[2])[0];
+    }
+
+    private String uri(String space) {
+        return "tcp://127.0.0.1:" + port + "/" + space + "?keep";
+    }
+
+    private Map<String, Object> report(Map<String, String> options, long elapsed) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("elapsedSeconds", elapsed / 1e9);
+        report.put("gamesCompleted", completed.get());
+        report.put("gamesFailed", failed.get());
+        report.put("turns", turns.get());
+        report.put("turnsPerSecond", turns.get() / (elapsed / 1e9));
+
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        latencies.put("lobby.create", lobbyCreate.toMap());
+        latencies.put("lobby.join", lobbyJoin.toMap());
+        latencies.put("game.start", gameStart.toMap());
+        latencies.put("turn.action", turnAction.toMap());
+        report.put("latenciesMicros", latencies);
+
+        // The server side of the same run, see Metrics
+        report.put("serverMetrics", Metrics.snapshot());
+
+        return report;
+    }
+
+    // Every sample of one latency, in nanoseconds. Percentiles are taken from the sorted samples at the end
+    static class Latencies {
+        private long[] samples = new long[1024];
+        private int count = 0;
+
+        synchronized void add(long nanos) {
+            if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+            samples[count++] = nanos;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("p50", micros(percentile(sorted, 0.50)));
+            map.put("p99", micros(percentile(sorted, 0.99)));
+            map.put("p999", micros(percentile(sorted, 0.999)));
+            map.put("max", micros(count == 0 ? 0 : sorted[count - 1]));
+            map.put("mean", micros(count == 0 ? 0 : Arrays.stream(sorted).sum() / count));
+            return map;
+        }
+
+        String summary(String name) {
+            Map<String, Object> map = toMap();
+            return String.format("%-12s n=%-8s p50=%-10s p99=%-10s p999=%-10s max=%s (us)",
+                    name, map.get("count"), map.get("p50"), map.get("p99"), map.get("p999"), map.get("max"));
+        }
+
+        // Nearest rank
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(p * sorted.length);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private static double micros(long nanos) {
+            return nanos / 1000.0;
+        }
+    }
+}
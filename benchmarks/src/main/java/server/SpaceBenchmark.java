@@ -0,0 +1,60 @@
+package server;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.SequentialSpace;
+import org.jspace.Space;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// A player's put and get of a (playerId, command, payload) tuple in a space that already holds
+// the unread tuples of the other players, in a SequentialSpace and in an IndexedSpace
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpaceBenchmark {
+
+    static final String[] COMMANDS = { "board", "cards", "takes", "UNO", "delta" };
+
+    @Param({ "sequential", "indexed" })
+    String space;
+
+    @Param({ "4", "5" })
+    int players;
+
+    @Param({ "10", "100" })
+    int backlog;  // Unread tuples per player and command
+
+    Space tuples;
+
+    @Setup(Level.Iteration)
+    public void setup() throws InterruptedException {
+        tuples = space.equals("indexed") ? new IndexedSpace() : new SequentialSpace();
+
+        for (int i = 0; i < backlog; i++)
+            for (int player = 1; player < players; player++)
+                for (String command : COMMANDS)
+                    tuples.put("player" + player, command, "payload");
+    }
+
+    @Benchmark
+    public Object[] putAndGet() throws InterruptedException {
+        tuples.put("player0", "board", "payload");
+        return tuples.get(new ActualField("player0"), new ActualField("board"), new FormalField(String.class));
+    }
+}
@@ -0,0 +1,116 @@
+package chat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The chat of a lobby: the last CAPACITY messages in a ring buffer, and how far each player has read
+// A message is stored once, players pull what they haven't read yet (see lobbyWaiter's "readChat"),
+// so the memory of a lobby stays the same no matter how much is said or who stops reading.
+// A player that falls more than CAPACITY messages behind gets a "You missed N messages." marker instead.
+// Every sender may send RATE messages a second, with bursts of up to BURST; more than that is dropped
+// and the sender is told on his next read.
+// Configured with the system properties kameluno.chatCapacity (default 256), kameluno.chatRate (5),
+// kameluno.chatBurst (10) and kameluno.chatLength (500, longer messages are cut)
+// Not thread safe, it is only used by the lobby's waiter
+class ChatTopic {
+
+    static final int CAPACITY = Integer.getInteger("kameluno.chatCapacity", 256);
+    static final int RATE = Integer.getInteger("kameluno.chatRate", 5);
+    static final int BURST = Integer.getInteger("kameluno.chatBurst", 10);
+    static final int LENGTH = Integer.getInteger("kameluno.chatLength", 500);
+
+    static final String SYSTEM = "System";  // The sender of the markers
+
+    // The senders and texts of the messages a player hasn't read, in the order they were sent
+    static class Unread {
+        final List<String> senders = new ArrayList<>();
+        final List<String> texts = new ArrayList<>();
+        long missed = 0;  // Messages that were overwritten before the player read them
+        int dropped = 0;  // Messages of the player that were dropped by his rate limit
+
+        void add(String sender, String text) {
+            senders.add(sender);
+            texts.add(text);
+        }
+    }
+
+    // A sender's token bucket
+    private static class Limit {
+        double tokens = BURST;
+        long refilledAt;
+        int dropped = 0;  // Messages dropped since the sender last read
+
+        Limit(long now) {
+            refilledAt = now;
+        }
+    }
+
+    private final String[] senders = new String[CAPACITY];
+    private final String[] texts = new String[CAPACITY];
+    private long next = 0;  // The number of the next message, message n is at n % CAPACITY
+
+    private final Map<String, Long> cursors = new HashMap<>();  // The number of the next message each player reads
+    private final Map<String, Limit> limits = new HashMap<>();
+
+    // Start reading at the next message, e.g. when a player joins
+    void subscribe(String player) {
+        cursors.put(player, next);
+    }
+
+    // Forget the player's cursor and rate limit, e.g. when he leaves
+    void unsubscribe(String player) {
+        cursors.remove(player);
+        limits.remove(player);
+    }
+
+    // Add a message, false if the sender is over his rate limit and it was dropped
+    boolean send(String sender, String text, long now) {
+        Limit limit = limits.computeIfAbsent(sender, s -> new Limit(now));
+        limit.tokens = Math.min(BURST, limit.tokens + (now - limit.refilledAt) * RATE / 1e9);
+        limit.refilledAt = now;
+
+        if (limit.tokens < 1) {
+            limit.dropped++;
+            return false;
+        }
+        limit.tokens--;
+
+        if (text.length() > LENGTH) text = text.substring(0, LENGTH);
+        int slot = (int) (next % CAPACITY);
+        senders[slot] = sender;
+        texts[slot] = text;
+        next++;
+        return true;
+    }
+
+    // The messages the player hasn't read, and move his cursor past them
+    // A player that never subscribed starts reading now, only call it for the lobby's players
+    Unread read(String player) {
+        Unread unread = new Unread();
+        long cursor = cursors.getOrDefault(player, next);
+
+        long oldest = Math.max(0, next - CAPACITY);
+        if (cursor < oldest) {
+            unread.missed = oldest - cursor;
+            unread.add(SYSTEM, "You missed " + unread.missed + " messages.");
+            cursor = oldest;
+        }
+
+        for (; cursor < next; cursor++) {
+            int slot = (int) (cursor % CAPACITY);
+            unread.add(senders[slot], texts[slot]);
+        }
+        cursors.put(player, next);
+
+        Limit limit = limits.get(player);
+        if (limit != null && limit.dropped > 0) {
+            unread.dropped = limit.dropped;
+            unread.add(SYSTEM, limit.dropped + " of your messages were dropped, slow down.");
+            limit.dropped = 0;
+        }
+
+        return unread;
+    }
+}
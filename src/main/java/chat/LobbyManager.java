@@ -1,178 +1,247 @@
 package chat;
 import game.GameHandler;
-import lombok.SneakyThrows;
+import game.GameLog;
+import game.GameSpace;
 import org.jspace.*;
+import server.Events;
+import server.Histogram;
+import server.Lifecycle;
+import server.Log;
+import server.Mailbox;
+import server.Metrics;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps track of the lobbies and serves the lobby requests of the clients
+// The methods are called concurrently by the RequestDispatcher's workers
+// Metrics: lobby.create, lobby.join and lobby.list (histograms), lobby.joinRefused (count), see server.Metrics
+// JFR: a Lobby event for every create and join, see server.Events. The player is not known to the requests, so it is empty
+public class LobbyManager {
+    private static final Histogram CREATE = Metrics.histogram("lobby.create");
+    private static final Histogram JOIN = Metrics.histogram("lobby.join");
+    private static final Histogram LIST = Metrics.histogram("lobby.list");
+    private static final LongAdder JOIN_REFUSED = Metrics.counter("lobby.joinRefused");
 
-public class LobbyManager implements Runnable {
-    private Space server_LobbyManager;
     private SpaceRepository spaceRepository;
-    private SequentialSpace lobbies;
+    private LobbyRegistry lobbies;
+    private Lifecycle lifecycle;
 
-    public LobbyManager(Space server_LobbyManager, SpaceRepository spaceRepository) {
-        this.server_LobbyManager = server_LobbyManager;
+    public LobbyManager(SpaceRepository spaceRepository) {
+        this(spaceRepository, new Lifecycle(spaceRepository));
+    }
+
+    public LobbyManager(SpaceRepository spaceRepository, Lifecycle lifecycle) {
         this.spaceRepository = spaceRepository;
-        lobbies = new SequentialSpace();
+        this.lifecycle = lifecycle;
+        lobbies = new LobbyRegistry();
     }
 
-    @Override
-    public void run() {
-        //Lobby Id is integer starting from 0.
-        int lobbyID = 0;
-        String lobbyURI;
-        while (true) {
+    public Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    //Publishes the games that were still going when the server stopped (see GameLog), their lobbies are gone.
+    //The games keep their ids, so new lobbies get ids above them.
+    public void resumeGames() throws InterruptedException {
+        for (Map.Entry<String, GameSpace> game : GameLog.resume(spaceRepository).entrySet()) {
+            String id = game.getKey().startsWith("game") ? game.getKey().substring("game".length()) : game.getKey();
+            lifecycle.register(Lifecycle.Kind.GAME, id, game.getValue(), null);
             try {
-                //LobbyManager server requests coming from server with template (String, String)
-                Object[] request = server_LobbyManager.get(new FormalField(String.class), new FormalField(String.class));
-                String requestType = (String) request[0];
-                String requestArgument = (String) request[1];
-                System.out.println("Processing request at LobbyManager " + requestType + " -> " + requestArgument);
-
-                // 3 request types are served looking at first element in tuple.
-                switch (requestType) {
-
-                    //Creates a lobby
-                    case "createLobby":
-                        lobbyURI = "tcp://127.0.0.1:9001/lobby" + lobbyID + "?keep";
-                        System.out.println("Setting up lobby space " + lobbyURI + "...");
-                        SequentialSpace lobby = new SequentialSpace();
-                        spaceRepository.add("lobby" + lobbyID, lobby);
-                        //lobbywaiter is started with a new thread thus making every lobby as a private space and private waiter.
-                        new Thread(new lobbyWaiter(lobby, lobbyID,spaceRepository)).start();
-                        lobbies.put("" + lobbyID, 1);
-                        lobbyID++;
-                        server_LobbyManager.put(requestType, requestArgument, "if");
-                        server_LobbyManager.put(requestType, requestArgument, "oklobby");
-                        break;
-
-                    //Checks that a Client can or cannot join a lobby
-                    case "joinLobby":
-                        Object[] the_lobby2 = lobbies.queryp(new ActualField(requestArgument), new FormalField(Integer.class));
-                        if (the_lobby2 != null) {
-                            System.out.println("The lobby is found sending URL");
-                            int numOfPlayer = (int) the_lobby2[1];
-                            if (numOfPlayer < 5) {
-                                lobbyURI = "tcp://127.0.0.1:9001/lobby" + the_lobby2[0] + "?keep";
-                                server_LobbyManager.put(requestType, requestArgument, "if");
-                                server_LobbyManager.put(requestType, requestArgument, "oklobby");
-                                Object[] updateLobby = lobbies.get(new ActualField(requestArgument), new FormalField(Integer.class));
-                                int increasesize = (int) updateLobby[1];
-                                increasesize++;
-                                lobbies.put(updateLobby[0], increasesize);
-
-                            } else {
-                                System.out.println("The lobby is full. Sending error response.");
-                                server_LobbyManager.put(requestType, requestArgument, "else");
-                                server_LobbyManager.put(requestType, requestArgument, "koybbol");
-                            }
-                        } else {
-                            System.out.println("The lobby " + requestArgument + " does not exist. Sending error response.");
-                            server_LobbyManager.put(requestType, requestArgument, "else");
-                            server_LobbyManager.put(requestType, requestArgument, "koybbol");
-                        }
-                        break;
-
-                    //Sends lobbies that were created.
-                    case "getLobbies":
-                        LinkedList<Object[]> lobbies = this.lobbies.queryAll(new FormalField(String.class), new FormalField(Integer.class));
-                        String[] list = new String[lobbies.size()];
-                        System.out.println(lobbies.size());
-                        for (int i = 0; i < lobbies.size(); i++) {
-                            String value = (String) lobbies.get(i)[0];
-                            System.out.println(value);
-                            list[i] = value;
-                        }
-                        server_LobbyManager.put("getLobbies", list);
-                        break;
-                    default:
+                lobbies.reserve(Integer.parseInt(id));
+            } catch (NumberFormatException e) {
+                // Not the id of a lobby
+            }
+        }
+    }
 
-                }
+    //Creates a lobby and returns its id
+    public String createLobby() {
+        long start = System.nanoTime();
+        Events.Lobby event = new Events.Lobby();
+        event.begin();
+        LobbyRegistry.Lobby registered = lobbies.create();
+        int lobbyID = registered.id;
+        String lobbyURI = "tcp://127.0.0.1:9001/lobby" + lobbyID + "?keep";
+        Log.info("lobby.created", "lobby", lobbyID, "uri", lobbyURI);
+        LobbySpace lobby = new LobbySpace();
+        spaceRepository.add("lobby" + lobbyID, lobby);
+        //lobbywaiter handles the requests arriving at the lobby space, making every lobby a private space with a private waiter.
+        lobby.start(new lobbyWaiter(lobby, lobbyID,spaceRepository, lobbies, registered, lifecycle));
+        //Only listed and joinable once its space is published and served, a client that finds it can use it right away.
+        lobbies.add(registered);
+        //The lobby is reclaimed when it has been idle for too long, see Lifecycle.
+        lifecycle.register(Lifecycle.Kind.LOBBY, "" + lobbyID, lobby, () -> lobbies.remove("" + lobbyID));
+        CREATE.time(start);
+        if (event.shouldCommit()) {
+            event.operation = "create";
+            event.accepted = true;
+            event.commit("lobby" + lobbyID, "", 0);
+        }
+        return "" + lobbyID;
+    }
 
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    //Checks that a Client can or cannot join a lobby. Returns true if he can
+    public boolean joinLobby(String lobbyId) {
+        long start = System.nanoTime();
+        Events.Lobby event = new Events.Lobby();
+        event.begin();
+
+        boolean joined = join(lobbyId);
+
+        if (!joined) JOIN_REFUSED.increment();
+        JOIN.time(start);
+        if (event.shouldCommit()) {
+            event.operation = "join";
+            event.accepted = joined;
+            event.commit("lobby" + lobbyId, "", lobbyId == null ? 0 : lobbyId.length());
+        }
+        return joined;
+    }
+
+    private boolean join(String lobbyId) {
+        LobbyRegistry.Lobby the_lobby2 = lobbies.get(lobbyId);
+        if (the_lobby2 == null) {
+            Log.info("lobby.joinRefused", "lobby", lobbyId, "reason", "missing");
+            return false;
         }
 
+        if (!lobbies.join(the_lobby2)) {
+            Log.info("lobby.joinRefused", "lobby", lobbyId, "reason", "full");
+            return false;
+        }
+
+        Log.info("lobby.joined", "lobby", lobbyId);
+        return true;
+    }
+
+    //Returns the ids of the lobbies that were created, filtered and paged by the argument (see LobbyQuery).
+    public String[] getLobbies(String argument) {
+        long start = System.nanoTime();
+        String[] ids = lobbies.list(LobbyQuery.parse(argument));
+        LIST.time(start);
+        return ids;
     }
 }
 
 /**
- *  lobbyWaiter serves four different functionalities in a lobby:
- *  * Adds Clients to players array.
+ *  lobbyWaiter serves five different functionalities in a lobby:
+ *  * Adds Clients to players array and removes them when they leave.
  *  * Returns all players in a string Array.
- *  * Broadcasts a message to all players.
+ *  * Adds a chat message from a player to the lobby's chat (see ChatTopic).
+ *  * Sends a player the chat messages he hasn't read.
  *  * Initializes gameHandler.
+ *
+ *  Requests, all (String, String):
+ *  * ("joined", player) -> (player, "has joined.") is said in the chat
+ *  * ("left", player) -> (player, "has left.") is said in the chat, he isn't a player of the lobby anymore
+ *    and his seat is free for someone else to join
+ *  * ("getPlayers", _) -> (String of the players)
+ *  * ("readChat", player) -> (player, "chat", String[] senders, String[] texts), the messages since his last read.
+ *    A "System" message tells him if he missed messages or some of his were dropped by the rate limit.
+ *    Only the lobby's players get an answer
+ *  * ("initGame", _) -> (player, "System", "Go!", "") for every player when the game has started
+ *  * (player, text) -> text is said in the chat, only by players that joined
+ *  The chat isn't pushed anymore: a message used to be put as a (sender, text) tuple for every player,
+ *  clients that waited for those have to poll with "readChat" instead
+ *  Metrics: lobby.chat.messages, lobby.chat.dropped and lobby.chat.missed (counts), see server.Metrics
  */
-class lobbyWaiter implements Runnable {
+class lobbyWaiter implements Mailbox.Handler {
+    private static final LongAdder CHAT_MESSAGES = Metrics.counter("lobby.chat.messages");
+    private static final LongAdder CHAT_DROPPED = Metrics.counter("lobby.chat.dropped");
+    private static final LongAdder CHAT_MISSED = Metrics.counter("lobby.chat.missed");
 
-    private Space lobby;
+    private LobbySpace lobby;
     private SpaceRepository spaceRepository;
     private int lobbyID;
     private ArrayList<String> players;
+    private LobbyRegistry registry;
+    private LobbyRegistry.Lobby registered;
+    private Lifecycle lifecycle;
+    private ChatTopic chat = new ChatTopic();
 
-    public lobbyWaiter(Space lobby, int lobbyID, SpaceRepository spaceRepository) {
+    public lobbyWaiter(LobbySpace lobby, int lobbyID, SpaceRepository spaceRepository, LobbyRegistry registry, LobbyRegistry.Lobby registered, Lifecycle lifecycle) {
         this.lobby = lobby;
         this.lobbyID = lobbyID;
         this.spaceRepository = spaceRepository;
+        this.registry = registry;
+        this.registered = registered;
+        this.lifecycle = lifecycle;
         this.players = new ArrayList<String>();
     }
 
+    // Handle a (String, String) request sent to the lobby space
     @Override
-    public void run() {
-        while (true) {
-            try {
-                Object[] t = lobby.get(new FormalField(String.class), new FormalField(String.class));
-                String msg1 = (String) t[0];
-                String msg2 = (String) t[1];
-
-                if (msg1.equals("joined")) {
-
-                    System.out.println("Lobby" + lobbyID + ": " + msg2 + " has " + msg1);
-                    players.add(msg2);
-                    lobby.put(msg2, "has joined.");
-
-                } else if (msg1.equals("getPlayers")) {
-
-                    System.out.println("Lobby" + lobbyID + ": get Players requested.");
-                    String[] listofplayers = players.toArray(String[]::new);
-                    System.out.println(Arrays.toString(listofplayers));
-                    lobby.put(Arrays.toString(listofplayers));
-
-                } else if(msg1.equals("initGame")){
-
-                    System.out.println("Lobby" + lobbyID + ": initGame requested.");
-                    if(players.size() < 4){
-                        System.out.println("Initgame stopped due to player count.");
-                    }else {
-                        SequentialSpace gameSpace = new SequentialSpace();
-                        spaceRepository.add("game" + lobbyID, gameSpace);
-                        String[] listOfPlayers = new String[players.size()];
-                        for (int i = 0; i < players.size(); i++) {
-                            listOfPlayers[i] = players.get(i);
-                        }
-                        Thread thread = new Thread() {
-                            @SneakyThrows
-                            public void run() {
-                                new GameHandler(spaceRepository, gameSpace, listOfPlayers);
-                            }
-                        };
-                        thread.start();
-
-                        for (String player : players) {
-                            lobby.put(player, "System", "Go!", "");
-                        }
-                    }
-                } else {
-                    System.out.println("Lobby" + lobbyID + ": " + t[0] + ":" + t[1]);
-                    for (String player : players) {
-                        lobby.put(player, t[0], t[1]);
-                    }
-                }
-            } catch (InterruptedException e) {
+    public void handle(Object[] t) throws InterruptedException {
+        String msg1 = (String) t[0];
+        String msg2 = (String) t[1];
+
+        if (msg1.equals("joined")) {
+
+            Log.info("lobby.playerJoined", "lobby", lobbyID, "player", msg2);
+            players.add(msg2);
+            chat.subscribe(msg2);
+            say(msg2, "has joined.");
+
+        } else if (msg1.equals("left")) {
+
+            if (players.remove(msg2)) {
+                Log.info("lobby.playerLeft", "lobby", lobbyID, "player", msg2);
+                registry.leave(registered);
+                say(msg2, "has left.");
+                chat.unsubscribe(msg2);
+            }
+
+        } else if (msg1.equals("getPlayers")) {
+
+            String[] listofplayers = players.toArray(String[]::new);
+            Log.debug("lobby.getPlayers", "lobby", lobbyID, "players", listofplayers);
+            lobby.put(Arrays.toString(listofplayers));
 
+        } else if (msg1.equals("readChat")) {
+
+            if (!players.contains(msg2)) {
+                Log.debug("lobby.readChatRefused", "lobby", lobbyID, "player", msg2);
+                return;
+            }
+
+            ChatTopic.Unread unread = chat.read(msg2);
+            if (unread.missed > 0) CHAT_MISSED.add(unread.missed);
+            lobby.put(msg2, "chat", unread.senders.toArray(new String[0]), unread.texts.toArray(new String[0]));
+
+        } else if(msg1.equals("initGame")){
+
+            if(players.size() < 4){
+                Log.info("lobby.initGameRefused", "lobby", lobbyID, "players", players.size());
+            }else {
+                GameSpace gameSpace = new GameSpace();
+                spaceRepository.add("game" + lobbyID, gameSpace);
+                String[] listOfPlayers = new String[players.size()];
+                for (int i = 0; i < players.size(); i++) {
+                    listOfPlayers[i] = players.get(i);
+                }
+                //The game handles its players' commands on the shared threads, see Execution.
+                new GameHandler(spaceRepository, "game" + lobbyID, gameSpace, listOfPlayers);
+                registry.markStarted(registered);
+                //The game is reclaimed after it is done or abandoned, see Lifecycle.
+                lifecycle.register(Lifecycle.Kind.GAME, "" + lobbyID, gameSpace, null);
+                Log.info("lobby.gameStarted", "lobby", lobbyID, "players", listOfPlayers);
+
+                lobby.broadcast(players.toArray(), "System", "Go!", "");
             }
+        } else {
+            if (players.contains(msg1)) say(msg1, msg2);
+            else Log.debug("lobby.chatRefused", "lobby", lobbyID, "from", msg1);
         }
     }
-}
\ No newline at end of file
+
+    private void say(String sender, String text) {
+        if (chat.send(sender, text, System.nanoTime())) {
+            CHAT_MESSAGES.increment();
+            Log.debug("lobby.chat", "lobby", lobbyID, "from", sender, "message", text);
+        } else {
+            CHAT_DROPPED.increment();
+        }
+    }
+}
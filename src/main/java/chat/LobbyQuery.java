@@ -0,0 +1,61 @@
+package chat;
+
+// A filtered page of the lobby listing, parsed from the argument of a getLobbies request
+// The argument is a list of '&' separated options, unknown options are ignored:
+// * open: only lobbies with a free seat
+// * notStarted: only lobbies whose game has not started
+// * minPlayers=n, maxPlayers=n: only lobbies with that many players, clamped to 0..MAX_PLAYERS
+//   so every query that means the same shares its filtered list (see filterKey)
+// * page=n, size=n: the n'th page of the given size (the first page is 0). Without a size everything is one page
+// The old clients' arguments have no options, so they get all lobbies as before
+class LobbyQuery {
+
+    boolean open = false;
+    boolean notStarted = false;
+    int minPlayers = 0;
+    int maxPlayers = LobbyRegistry.MAX_PLAYERS;
+    int page = 0;
+    int size = Integer.MAX_VALUE;
+
+    static LobbyQuery parse(String argument) {
+        LobbyQuery query = new LobbyQuery();
+        if (argument == null) return query;
+
+        for (String option : argument.split("&")) {
+            String[] keyValue = option.split("=", 2);
+            String key = keyValue[0].trim();
+            int value = keyValue.length > 1 ? parseInt(keyValue[1]) : -1;
+
+            switch (key) {
+                case "open": query.open = true; break;
+                case "notStarted": query.notStarted = true; break;
+                case "minPlayers": if (value >= 0) query.minPlayers = Math.min(value, LobbyRegistry.MAX_PLAYERS); break;
+                case "maxPlayers": if (value >= 0) query.maxPlayers = Math.min(value, LobbyRegistry.MAX_PLAYERS); break;
+                case "page": if (value >= 0) query.page = value; break;
+                case "size": if (value > 0) query.size = value; break;
+                default:
+            }
+        }
+
+        return query;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    boolean matches(LobbyRegistry.LobbyInfo lobby) {
+        if (open && lobby.players >= LobbyRegistry.MAX_PLAYERS) return false;
+        if (notStarted && lobby.started) return false;
+        return lobby.players >= minPlayers && lobby.players <= maxPlayers;
+    }
+
+    // Identifies the filters (not the page), so the filtered list can be shared between queries
+    String filterKey() {
+        return open + "," + notStarted + "," + minPlayers + "," + maxPlayers;
+    }
+}
@@ -0,0 +1,157 @@
+package chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The open lobbies and how many players have joined each of them
+// Safe to use from many threads: lookups go straight to a ConcurrentHashMap and joining is a
+// compare-and-set on the lobby's player count. Listing works on an immutable snapshot that is only
+// rebuilt after a lobby changed, and each filtered list is computed once per snapshot
+class LobbyRegistry {
+
+    static final int MAX_PLAYERS = 5;
+
+    // A lobby and the number of players that have joined it
+    static class Lobby {
+        final int id;
+        final AtomicInteger players = new AtomicInteger(1);
+        volatile boolean started = false;  // True once the game of the lobby has started
+
+        Lobby(int id) {
+            this.id = id;
+        }
+    }
+
+    // How a lobby looked when the snapshot was taken
+    static class LobbyInfo {
+        final String id;
+        final int players;
+        final boolean started;
+
+        LobbyInfo(Lobby lobby) {
+            this.id = "" + lobby.id;
+            this.players = lobby.players.get();
+            this.started = lobby.started;
+        }
+    }
+
+    // The lobbies as of a version of the registry
+    private static class Snapshot {
+        final long version;
+        final LobbyInfo[] lobbies;  // In the order they were created
+        final ConcurrentHashMap<String, String[]> filtered = new ConcurrentHashMap<>();  // Ids matching a LobbyQuery.filterKey()
+
+        Snapshot(long version, LobbyInfo[] lobbies) {
+            this.version = version;
+            this.lobbies = lobbies;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Lobby> lobbies = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(0);  // Lobby Id is integer starting from 0.
+    private final AtomicLong version = new AtomicLong(0);  // Increased every time a lobby changes
+    private volatile Snapshot snapshot = new Snapshot(0, new LobbyInfo[0]);
+
+    // A new lobby with the next id, nobody can find or join it until it is added
+    Lobby create() {
+        return new Lobby(nextId.getAndIncrement());
+    }
+
+    // Make a created lobby visible to get, join and list
+    void add(Lobby lobby) {
+        lobbies.put("" + lobby.id, lobby);
+        version.incrementAndGet();
+    }
+
+    // New lobbies get ids above id, e.g. of a game that was resumed
+    void reserve(int id) {
+        nextId.accumulateAndGet(id + 1, Math::max);
+    }
+
+    Lobby get(String id) {
+        return lobbies.get(id);
+    }
+
+    void remove(String id) {
+        if (lobbies.remove(id) != null) version.incrementAndGet();
+    }
+
+    int size() {
+        return lobbies.size();
+    }
+
+    // Add a player to a lobby unless it is full. Returns false if it is full
+    boolean join(Lobby lobby) {
+        while (true) {
+            int players = lobby.players.get();
+            if (players >= MAX_PLAYERS) return false;
+            if (lobby.players.compareAndSet(players, players + 1)) {
+                version.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // Give a player's seat back, the creator's seat is never given back. Returns false if only that one is left
+    boolean leave(Lobby lobby) {
+        while (true) {
+            int players = lobby.players.get();
+            if (players <= 1) return false;
+            if (lobby.players.compareAndSet(players, players - 1)) {
+                version.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    void markStarted(Lobby lobby) {
+        lobby.started = true;
+        version.incrementAndGet();
+    }
+
+    // The ids of all lobbies in the order they were created
+    String[] ids() {
+        return list(new LobbyQuery());
+    }
+
+    // The ids of the lobbies on the page of the query, in the order they were created
+    // The returned array may be shared between callers and must not be modified
+    String[] list(LobbyQuery query) {
+        Snapshot current = snapshot();
+
+        String[] ids = current.filtered.computeIfAbsent(query.filterKey(), key -> {
+            ArrayList<String> matching = new ArrayList<>();
+            for (LobbyInfo lobby : current.lobbies)
+                if (query.matches(lobby)) matching.add(lobby.id);
+            return matching.toArray(new String[0]);
+        });
+
+        // Everything on one page
+        if (query.page == 0 && query.size >= ids.length) return ids;
+
+        long from = (long) query.page * query.size;
+        if (from >= ids.length) return new String[0];
+        return Arrays.copyOfRange(ids, (int) from, (int) Math.min(ids.length, from + query.size));
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        long latest = version.get();
+        if (current.version == latest) return current;
+
+        Lobby[] all = lobbies.values().toArray(new Lobby[0]);
+        Arrays.sort(all, Comparator.comparingInt(lobby -> lobby.id));
+
+        LobbyInfo[] infos = new LobbyInfo[all.length];
+        for (int i = 0; i < all.length; i++) infos[i] = new LobbyInfo(all[i]);
+
+        // Another thread may have built a newer one in the meantime, that's fine, the next call rebuilds
+        current = new Snapshot(latest, infos);
+        snapshot = current;
+        return current;
+    }
+}
@@ -0,0 +1,24 @@
+package chat;
+
+import org.jspace.Space;
+import server.IndexedSpace;
+import server.MailboxSpace;
+
+// The space a lobby is published under in the repository
+// Every (String, String) tuple is a request for the lobbyWaiter and goes to its mailbox,
+// the responses to the players are stored as tuples, in an IndexedSpace by player
+public class LobbySpace extends MailboxSpace {
+
+    public LobbySpace() {
+        this(new IndexedSpace());
+    }
+
+    public LobbySpace(Space space) {
+        super(space);
+    }
+
+    @Override
+    protected boolean isCommand(Object[] fields) {
+        return fields.length == 2 && fields[0] instanceof String && fields[1] instanceof String;
+    }
+}
@@ -0,0 +1,160 @@
+package chat;
+
+import org.jspace.FormalField;
+import org.jspace.Space;
+
+import server.Execution;
+import server.Histogram;
+import server.Log;
+import server.Metrics;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  RequestDispatcher takes the clients' requests from the request space and serves them
+ *  concurrently on a pool of workers (by default the shared threads, see Execution),
+ *  so a slow request does not hold up the others.
+ *
+ *  Two request templates are served:
+ *  * (type, verb, argument, requestId): the response (requestId, status, String[]) is tagged with the requestId,
+ *    so it reaches the client that asked. The payload is always an array, so responses never match a request template
+ *      - ("lobby", "createLobby", _, id) -> (id, "oklobby", {lobbyId})
+ *      - ("lobby", "joinLobby", lobbyId, id) -> (id, "oklobby", {lobbyId}) or (id, "koybbol", {lobbyId})
+ *      - ("lobby", "getLobbies", filters, id) -> (id, "getLobbies", lobbyIds), filters and paging as in LobbyQuery
+ *  * (type, verb, argument): the old untagged requests, answered with ("oklobby"), ("koybbol") or ("getLobbies", String[])
+ *
+ *  Metrics: requests (count), request.wait (taken from the space until a worker starts on it)
+ *  and request.serve (until the response is put), see server.Metrics.
+ */
+public class RequestDispatcher {
+
+    private static final LongAdder REQUESTS = Metrics.counter("requests");
+    private static final Histogram WAIT = Metrics.histogram("request.wait");
+    private static final Histogram SERVE = Metrics.histogram("request.serve");
+
+    private final Space requestSpace;
+    private final LobbyManager lobbyManager;
+    private final Executor workers;
+
+    public RequestDispatcher(Space requestSpace, LobbyManager lobbyManager) {
+        this(requestSpace, lobbyManager, Execution.executor());
+    }
+
+    public RequestDispatcher(Space requestSpace, LobbyManager lobbyManager, Executor workers) {
+        this.requestSpace = requestSpace;
+        this.lobbyManager = lobbyManager;
+        this.workers = workers;
+    }
+
+    // Serve requests forever. Untagged requests are taken on a thread of their own
+    public void run() {
+        new Thread(this::listenUntagged).start();
+        listenTagged();
+    }
+
+    private void listenTagged() {
+        while (true) {
+            try {
+                //Template: (String,String,String,String)
+                Object[] request = requestSpace.get(new FormalField(String.class), new FormalField(String.class), new FormalField(String.class), new FormalField(String.class));
+                long taken = taken();
+                workers.execute(() -> {
+                    long start = started(taken);
+                    serveTagged((String) request[0], (String) request[1], (String) request[2], (String) request[3]);
+                    SERVE.time(start);
+                });
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void listenUntagged() {
+        while (true) {
+            try {
+                //Template: (String,String,String)
+                Object[] request = requestSpace.get(new FormalField(String.class), new FormalField(String.class), new FormalField(String.class));
+                long taken = taken();
+                workers.execute(() -> {
+                    long start = started(taken);
+                    serveUntagged((String) request[0], (String) request[1], (String) request[2]);
+                    SERVE.time(start);
+                });
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // A request was taken from the space, returns when
+    private static long taken() {
+        REQUESTS.increment();
+        return System.nanoTime();
+    }
+
+    // A worker starts on a request taken at taken, returns when
+    private static long started(long taken) {
+        long now = System.nanoTime();
+        WAIT.record(now - taken);
+        return now;
+    }
+
+    private void serveTagged(String requestType, String requestVerb, String requestArgument, String requestId) {
+        Log.debug("request", "id", requestId, "type", requestType, "verb", requestVerb, "argument", requestArgument);
+        try {
+            //For now server serves only requests to LobbyManager
+            if (!"lobby".equals(requestType)) {
+                Log.warn("request.unknownType", "id", requestId, "type", requestType);
+                requestSpace.put(requestId, "koybbol", new String[]{ requestArgument });
+                return;
+            }
+
+            switch (requestVerb) {
+                case "createLobby":
+                    requestSpace.put(requestId, "oklobby", new String[]{ lobbyManager.createLobby() });
+                    break;
+                case "joinLobby":
+                    requestSpace.put(requestId, lobbyManager.joinLobby(requestArgument) ? "oklobby" : "koybbol", new String[]{ requestArgument });
+                    break;
+                case "getLobbies":
+                    requestSpace.put(requestId, "getLobbies", lobbyManager.getLobbies(requestArgument));
+                    break;
+                default:
+                    requestSpace.put(requestId, "koybbol", new String[]{ requestArgument });
+            }
+        } catch (InterruptedException e) {
+            Log.error("request.interrupted", "id", requestId);
+        }
+    }
+
+    private void serveUntagged(String requestType, String requestVerb, String requestArgument) {
+        Log.debug("request", "type", requestType, "verb", requestVerb, "argument", requestArgument);
+        try {
+            //For now server serves only requests to LobbyManager
+            if (!"lobby".equals(requestType)) {
+                Log.warn("request.unknownType", "type", requestType);
+                requestSpace.put("koybbol");
+                return;
+            }
+
+            switch (requestVerb) {
+                //This requestVerb returns all lobbies that were created. Output: String array.
+                case "getLobbies":
+                    requestSpace.put("getLobbies", lobbyManager.getLobbies(requestArgument));
+                    break;
+                case "createLobby":
+                    lobbyManager.createLobby();
+                    requestSpace.put("oklobby");
+                    break;
+                case "joinLobby":
+                    requestSpace.put(lobbyManager.joinLobby(requestArgument) ? "oklobby" : "koybbol");
+                    break;
+                default:
+                    requestSpace.put("koybbol");
+            }
+        } catch (InterruptedException e) {
+            Log.error("request.interrupted", "type", requestType, "verb", requestVerb);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package game;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// A compact binary format, Base64 encoded so it still travels as a string in the tuples
+// Cards are a single byte holding the card id (NO_CARD for none), counts and numbers are varints
+// and strings are a varint length followed by UTF-8
+class BinaryCodec implements WireCodec {
+
+    private static final int NO_CARD = 0xFF;
+
+    @Override
+    public String name() { return "binary"; }
+
+    @Override
+    public int id() { return 1; }
+
+    @Override
+    public String encodeAction(Action action) {
+        Writer out = new Writer();
+        out.writeVarint(action.getAction().ordinal());
+        out.writeCard(action.getCard());
+        return out.toString();
+    }
+
+    @Override
+    public Action decodeAction(String payload) {
+        Reader in = new Reader(payload);
+        return new Action(Actions.values()[in.readVarint()], in.readCard());
+    }
+
+    @Override
+    public String encodeBoard(Board board) {
+        Writer out = new Writer();
+        out.writeVarlong(board.getSeq());
+        out.writeCard(board.getTopCard());
+        out.writeCounts(board.getHands());
+        return out.toString();
+    }
+
+    @Override
+    public Board decodeBoard(String payload) {
+        Reader in = new Reader(payload);
+        return new Board(in.readVarlong(), in.readCard(), in.readCounts());
+    }
+
+    @Override
+    public String encodeDelta(BoardDelta delta) {
+        Writer out = new Writer();
+        out.writeVarlong(delta.getSeq());
+        out.writeCard(delta.getTopCard());
+        out.writeCounts(delta.getHands());
+        out.writeCards(delta.getReceived());
+        out.writeCards(delta.getRemoved());
+        return out.toString();
+    }
+
+    @Override
+    public BoardDelta decodeDelta(String payload) {
+        Reader in = new Reader(payload);
+        return new BoardDelta(in.readVarlong(), in.readCard(), in.readCounts(), in.readCards(), in.readCards());
+    }
+
+    @Override
+    public String encodeCard(Card card) {
+        Writer out = new Writer();
+        out.writeCard(card);
+        return out.toString();
+    }
+
+    @Override
+    public Card decodeCard(String payload) {
+        return new Reader(payload).readCard();
+    }
+
+    @Override
+    public String encodeCards(Card[] cards) {
+        Writer out = new Writer();
+        out.writeCards(cards);
+        return out.toString();
+    }
+
+    @Override
+    public Card[] decodeCards(String payload) {
+        return new Reader(payload).readCards();
+    }
+
+    @Override
+    public String encodeHints(Hints hints) {
+        Writer out = new Writer();
+        out.writeVarlong(hints.getSeq());
+        out.writeCards(hints.getPlayable());
+        out.writeVarint(hints.canDraw() ? 1 : 0);
+        return out.toString();
+    }
+
+    @Override
+    public Hints decodeHints(String payload) {
+        Reader in = new Reader(payload);
+        return new Hints(in.readVarlong(), in.readCards(), in.readVarint() == 1);
+    }
+
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        void writeCard(Card card) {
+            int id = Card.idOf(card);
+            bytes.write(id < 0 ? NO_CARD : id);
+        }
+
+        void writeCards(Card[] cards) {
+            writeVarint(cards.length);
+            for (Card card : cards) writeCard(card);
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+
+        // Player ids with a (possibly negative) count each
+        void writeCounts(Map<String, Integer> counts) {
+            writeVarint(counts.size());
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                writeString(entry.getKey());
+                int count = entry.getValue();
+                writeVarint((count << 1) ^ (count >> 31));  // Zigzag, so small negative numbers stay small
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Base64.getEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Reader(String payload) {
+            this.bytes = Base64.getDecoder().decode(payload);
+        }
+
+        int readVarint() {
+            return (int) readVarlong();
+        }
+
+        long readVarlong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        Card readCard() {
+            int id = bytes[position++] & 0xFF;
+            if (id == NO_CARD) return null;
+            if (id >= Card.IDS) throw new IllegalArgumentException("No card with id " + id);
+            return Card.of(id);
+        }
+
+        Card[] readCards() {
+            Card[] cards = new Card[readVarint()];
+            for (int i = 0; i < cards.length; i++) cards[i] = readCard();
+            return cards;
+        }
+
+        String readString() {
+            int length = readVarint();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Map<String, Integer> readCounts() {
+            int size = readVarint();
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                String key = readString();
+                int zigzag = readVarint();
+                counts.put(key, (zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package game;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.RemoteSpace;
+import org.jspace.Space;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+// A player without anyone at the keyboard, for filling up games and putting load on a server
+// It speaks the same protocol as StartClient (see GameHandler), but on a single thread and without sleeping:
+// the hand and the top card are kept up to date from the deltas, the first valid card is played
+// (or a card is drawn if there is none) and UNO is called when the bot is down to one card.
+// A pipelined bot sends each turn as one "turn" message instead of the taken, action, UNO, ended handshake.
+// The game space can be a RemoteSpace or the GameSpace itself, so many bots can play in one JVM
+public class Bot implements Runnable {
+
+    private final Space gameSpace;
+    private final String playerId;
+    private final WireCodec codec;  // The codec the bot asks the server for
+
+    private final Hand hand = new Hand();  // The bot's own cards
+    private int topCard = -1;  // The id of the card on top of the stack
+    private long seq = -1;  // The seq of the board the hand and top card are from
+
+    private int turns = 0;  // The number of turns the bot has taken
+    private volatile String winner = null;  // Set once the game is done
+    private volatile long allReadyAt = 0;  // When "allReady" arrived, in System.nanoTime
+    private LongConsumer actionTimes = nanos -> {};  // Told how long the server took to answer each action
+    private boolean pipelined = false;  // True to send whole turns, see GameHandler's "turn"
+
+    public Bot(Space gameSpace, String playerId) {
+        this(gameSpace, playerId, WireCodec.JSON);
+    }
+
+    // codec is the name of a WireCodec, "json" or "binary"
+    public Bot(Space gameSpace, String playerId, String codec) {
+        this(gameSpace, playerId, WireCodec.named(codec));
+        if (this.codec == null) throw new IllegalArgumentException("Unknown codec " + codec);
+    }
+
+    Bot(Space gameSpace, String playerId, WireCodec codec) {
+        this.gameSpace = gameSpace;
+        this.playerId = playerId;
+        this.codec = codec;
+    }
+
+    @Override
+    public void run() {
+        try {
+            play();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Play until a winner is found and return him
+    public String play() throws InterruptedException {
+        gameSpace.put(playerId, "ready", "delta," + codec.name());
+        gameSpace.get(new ActualField(playerId), new ActualField("allReady"));
+        allReadyAt = System.nanoTime();
+
+        // The board sent when the game was created may be in another codec, so start from a fresh snapshot
+        gameSpace.getp(new ActualField(playerId), new ActualField("players"), new FormalField(String[].class));
+        resync();
+
+        while (true) {
+            String status = (String) gameSpace.get(
+                    new ActualField(playerId),
+                    new ActualField("take"),
+                    new FormalField(String.class)
+            )[2];
+
+            // The bot doesn't look at them, but they would pile up in the space
+            discardNotifications();
+
+            if (!status.equals("alive")) {
+                winner = status;
+
+                // The winner can be announced more than once and the last updates are not needed anymore
+                gameSpace.getAll(new ActualField(playerId), new ActualField("take"), new FormalField(String.class));
+                gameSpace.getAll(new ActualField(playerId), new ActualField("delta"), new FormalField(String.class));
+                gameSpace.getAll(new ActualField(playerId), new FormalField(String.class));
+                return winner;
+            }
+
+            takeTurn();
+        }
+    }
+
+    public String getPlayerId() { return playerId; }
+    public int getTurns() { return turns; }
+    public String getWinner() { return winner; }
+    public long getAllReadyAt() { return allReadyAt; }
+
+    // Send every turn as a single "turn" message. Set before the bot runs
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    // Time every action from putting it until the answer, in nanoseconds. Set before the bot runs
+    public void setActionTimes(LongConsumer actionTimes) {
+        this.actionTimes = actionTimes;
+    }
+
+    private void takeTurn() throws InterruptedException {
+        turns++;
+        applyDeltas();
+
+        // A penalty for taking the turn only adds cards, so a card picked now is still valid after it
+        int card = pickCard();
+
+        if (pipelined) {
+            if (turn(card)) return;
+
+            // The server refused it, e.g. the penalty gave the bot a card to play instead of drawing.
+            // The turn is taken by then, so the rest of it goes the old way
+            resync();
+            card = pickCard();
+        } else {
+            gameSpace.put(playerId, "taken", "!");
+        }
+
+        while (!act(card)) {
+
+            // Either the penalty gave the bot a card to play instead of drawing, or its board is off
+            resync();
+            card = pickCard();
+        }
+
+        // The board update for the action is sent before its "success"
+        applyDeltas();
+
+        // The bot has won, the next "take" has the winner
+        if (hand.size() == 0) return;
+
+        if (hand.size() == 1) gameSpace.put(playerId, "UNO");
+
+        gameSpace.put(playerId, "ended");
+    }
+
+    // Take the turn, play the card (or draw if it is -1), call UNO if needed and end the turn in one message
+    // Returns true if the server accepted it
+    private boolean turn(int card) throws InterruptedException {
+        Action action = card < 0 ? new Action(Actions.DRAW, null) : new Action(Actions.PLAY, Card.of(card));
+
+        // The server only takes the UNO if the bot is really down to one card, a penalty may have added some
+        String calls = card >= 0 && hand.size() == 2 ? "UNO" : "";
+
+        long start = System.nanoTime();
+        gameSpace.put(playerId, "turn", codec.encodeAction(action), calls);
+
+        String status = (String) gameSpace.get(
+                new ActualField(playerId),
+                new ActualField("turned"),
+                new FormalField(String.class)
+        )[2];
+        actionTimes.accept(System.nanoTime() - start);
+
+        // The board update for the action is sent before the answer
+        applyDeltas();
+        return status.equals("success");
+    }
+
+    // Play the card, or draw if it is -1. Returns true if the server accepted it
+    private boolean act(int card) throws InterruptedException {
+        Action action = card < 0 ? new Action(Actions.DRAW, null) : new Action(Actions.PLAY, Card.of(card));
+        long start = System.nanoTime();
+        gameSpace.put(playerId, "action", codec.encodeAction(action));
+
+        String response = (String) gameSpace.get(
+                new ActualField(playerId),
+                new FormalField(String.class)
+        )[1];
+        actionTimes.accept(System.nanoTime() - start);
+
+        return response.equals("success");
+    }
+
+    // The first valid card on the hand, colored cards before black ones. -1 if there is none
+    private int pickCard() {
+        int black = -1;
+
+        for (int card = 0; card < Card.IDS; card++) {
+            if (!hand.contains(card) || !isMoveValid(card)) continue;
+
+            if (Card.colorOf(card) != Card.BLACK) return card;
+            if (black < 0) black = card;
+        }
+
+        return black;
+    }
+
+    // Same rules as Engine.isMoveValid
+    private boolean isMoveValid(int card) {
+        return Card.colorOf(topCard) == Card.BLACK
+                || Card.colorOf(card) == Card.BLACK
+                || Card.colorOf(card) == Card.colorOf(topCard)
+                || Card.valueOf(card) == Card.valueOf(topCard);
+    }
+
+    // Apply the deltas that arrived since the last call, resync if one is missing
+    private void applyDeltas() throws InterruptedException {
+        List<Object[]> tuples = gameSpace.getAll(
+                new ActualField(playerId),
+                new ActualField("delta"),
+                new FormalField(String.class)
+        );
+
+        for (Object[] tuple : tuples) {
+            BoardDelta delta = codec.decodeDelta((String) tuple[2]);
+
+            // Already part of the last snapshot
+            if (delta.getSeq() <= seq) continue;
+
+            // A delta is missing. The snapshot is newer than every delta taken here
+            if (delta.getSeq() != seq + 1) {
+                resync();
+                return;
+            }
+
+            if (delta.getTopCard() != null) topCard = Card.idOf(delta.getTopCard());
+            for (Card card : delta.getReceived()) hand.add(Card.idOf(card));
+            for (Card card : delta.getRemoved()) hand.remove(Card.idOf(card));
+            seq = delta.getSeq();
+        }
+    }
+
+    // Ask for a snapshot of the board and the hand and start over from it
+    private void resync() throws InterruptedException {
+
+        // Snapshots sent before, e.g. in the old codec
+        gameSpace.getAll(new ActualField(playerId), new ActualField("board"), new FormalField(String.class));
+        gameSpace.getAll(new ActualField(playerId), new ActualField("cards"), new FormalField(String.class));
+
+        gameSpace.put(playerId, "resync");
+
+        Board board = codec.decodeBoard((String) gameSpace.get(
+                new ActualField(playerId),
+                new ActualField("board"),
+                new FormalField(String.class)
+        )[2]);
+
+        Card[] cards = codec.decodeCards((String) gameSpace.get(
+                new ActualField(playerId),
+                new ActualField("cards"),
+                new FormalField(String.class)
+        )[2]);
+
+        seq = board.getSeq();
+        topCard = Card.idOf(board.getTopCard());
+        hand.clear();
+        for (Card card : cards) hand.add(Card.idOf(card));
+    }
+
+    private void discardNotifications() throws InterruptedException {
+        gameSpace.getAll(new ActualField(playerId), new ActualField("takes"), new FormalField(String.class));
+        gameSpace.getAll(new ActualField(playerId), new ActualField("timedOut"), new FormalField(String.class));
+        gameSpace.getAll(new ActualField(playerId), new ActualField("card"), new FormalField(String.class));
+        gameSpace.getAll(new ActualField(playerId), new ActualField("UNO"), new FormalField(String.class));
+        gameSpace.getAll(new ActualField(playerId), new ActualField("UNO"), new FormalField(String.class), new FormalField(String.class));
+    }
+}
+
+// Starts a bot for each player id on a thread of its own, each with its own connection
+// Usage: Bots [gameUri] [json|binary] [pipelined] [playerId...]
+// e.g. Bots tcp://localhost:31415/gameId?keep binary pipelined Mark Talha Volkan Mikkel
+class Bots {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String uri = "tcp://localhost:31415/gameId?keep";
+        WireCodec codec = WireCodec.JSON;
+        boolean pipelined = false;
+        List<String> playerIds = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("tcp://")) uri = arg;
+            else if (arg.equals("pipelined")) pipelined = true;
+            else if (WireCodec.named(arg) != null) codec = WireCodec.named(arg);
+            else playerIds.add(arg);
+        }
+
+        if (playerIds.isEmpty()) playerIds = List.of("Mark", "Talha", "Volkan", "Mikkel");
+
+        List<Bot> bots = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (String playerId : playerIds) {
+            Bot bot = new Bot(new RemoteSpace(uri), playerId, codec);
+            bot.setPipelined(pipelined);
+            Thread thread = new Thread(bot, "bot-" + playerId);
+            thread.start();
+            bots.add(bot);
+            threads.add(thread);
+        }
+
+        for (Thread thread : threads) thread.join();
+
+        for (Bot bot : bots)
+            System.out.printf("%s took %d turns, the winner is %s\n", bot.getPlayerId(), bot.getTurns(), bot.getWinner());
+    }
+}
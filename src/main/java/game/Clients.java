@@ -8,7 +8,6 @@ import org.jspace.SequentialSpace;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.TimeUnit;
 
 public class Clients {
 }
@@ -102,7 +101,10 @@ class StartClient implements Runnable {
     RemoteSpace debugSpace;
     SequentialSpace systemSpace;
     String playerId;
+    WireCodec codec = WireCodec.JSON;  // The codec the payloads are encoded with, JSON until told otherwise
     boolean gameDone = false;
+    volatile boolean timedOut = false;  // Set by TimeoutWatcher when the server ended the turn for the player
+    volatile long boardSeq = -1;  // The seq of the board shown to the player, set by ClientBoard
     Scanner scanner = new Scanner(System.in);
 
     public StartClient(RemoteSpace gameSpace, RemoteSpace debugSpace, SequentialSpace systemSpace, String playerId) {
@@ -129,19 +131,17 @@ class StartClient implements Runnable {
             }
             systemSpace.put("lock");
 
-            TimeUnit.SECONDS.sleep(1);
-
             // Threads to update TUI
             new Thread(new ClientBoard(playerId, gameSpace, systemSpace, this)).start();
             new Thread(new ClientHand(playerId, gameSpace, systemSpace, this)).start();
             new Thread(new TurnWatcher(playerId, gameSpace, systemSpace, this)).start();
             new Thread(new ListenUNO(playerId, gameSpace, systemSpace, this)).start();
             new Thread(new ListenMissingUNO(playerId, gameSpace, systemSpace, this)).start();
+            new Thread(new TimeoutWatcher(playerId, gameSpace, systemSpace, this)).start();
 
-            TimeUnit.SECONDS.sleep(1);
-
-            // Notify server the thread is ready
-            gameSpace.put(playerId, "ready");
+            // Notify server the thread is ready, the TUI only ever shows the newest board and hand,
+            // checks the actions against the hints before sending them and is told when it runs out of time
+            gameSpace.put(playerId, "ready", "latest,hints,timeouts");
 
             // Wait until all players are ready
             gameSpace.get(
@@ -185,18 +185,19 @@ class StartClient implements Runnable {
 
 
 
+        timedOut = false;
+
         systemSpace.get(new ActualField("lock"));
         System.out.println("\nEnter to begin");
         systemSpace.put("lock");
         scanner.nextLine();
+        if (timedOut) return true;
 
         // Take turn
-        gameSpace.put(playerId, "taken");
-
-        // Do an action: Place or draw card
-        doAction();
+        gameSpace.put(playerId, "taken", "!");
 
-        TimeUnit.SECONDS.sleep(1);
+        // Do an action: Place or draw card. The server ends the turn itself if the player ran out of time
+        if (!doAction()) return true;
 
         // End turn
         systemSpace.get(new ActualField("lock"));
@@ -208,23 +209,33 @@ class StartClient implements Runnable {
         return true;
     }
 
-    private void doAction() throws InterruptedException {
+    // Returns false if the player ran out of time before the server approved an action
+    private boolean doAction() throws InterruptedException {
 
         // Loop until servers approves action
         while (true) {
             Card cardToPlay = null;
 
             String command = scanner.nextLine();
+            if (timedOut) return false;
 
             // Interpret command
             boolean draw = command.equals("Draw");
 
+            // Don't bother the server with an action the hints say it would refuse
+            if (!allowed(command, draw)) {
+                systemSpace.get(new ActualField("lock"));
+                System.out.println("\nINVALID\n");
+                systemSpace.put("lock");
+                continue;
+            }
+
             // Branch on command
             if (draw)
                 gameSpace.put(
                         playerId,
                         "action",
-                        new Action(Actions.DRAW, null)
+                        codec.encodeAction(new Action(Actions.DRAW, null))
                 );
             else {
                 cardToPlay = new Card(
@@ -235,7 +246,7 @@ class StartClient implements Runnable {
                 gameSpace.put(
                         playerId,
                         "action",
-                        new Action(Actions.PLAY, cardToPlay)
+                        codec.encodeAction(new Action(Actions.PLAY, cardToPlay))
                 );
             }
 
@@ -246,7 +257,7 @@ class StartClient implements Runnable {
             )[1];
 
             // Branch on response
-            if(response.equals("success")) break;
+            if(response.equals("success")) return true;
             else {
                 systemSpace.get(new ActualField("lock"));
                 System.out.println("\nINVALID\n");
@@ -254,6 +265,24 @@ class StartClient implements Runnable {
             }
         }
     }
+
+    // Check the action against the newest hints from the server, true if there are none yet
+    // or they are for another board than the one the player sees, then the server decides
+    private boolean allowed(String command, boolean draw) throws InterruptedException {
+        Object[] tuple = gameSpace.queryp(
+                new ActualField(playerId),
+                new ActualField("hints"),
+                new FormalField(String.class)
+        );
+        if (tuple == null) return true;
+
+        Hints hints = codec.decodeHints((String) tuple[2]);
+        if (hints.getSeq() != boardSeq) return true;
+        if (draw) return hints.canDraw();
+
+        String[] card = command.split(" ");
+        return card.length == 2 && hints.allows(new Card(card[0], card[1]));
+    }
 }
 
 // Listen for changes to the board and apply them
@@ -277,11 +306,12 @@ class ClientBoard implements Runnable {
             while (!startClient.gameDone) {
 
                 // Wait for signal
-                Board board = (Board) gameSpace.get(
+                Board board = startClient.codec.decodeBoard((String) gameSpace.get(
                         new ActualField(playerId),
                         new ActualField("board"),
-                        new FormalField(Board.class)
-                )[2];
+                        new FormalField(String.class)
+                )[2]);
+                startClient.boardSeq = board.getSeq();
 
                 // TUI
                 systemSpace.get(new ActualField("lock"));
@@ -325,11 +355,11 @@ class ClientHand implements Runnable {
            while (!startClient.gameDone) {
 
                // Wait for signal
-               Card[] hand = (Card[]) gameSpace.get(
+               Card[] hand = startClient.codec.decodeCards((String) gameSpace.get(
                        new ActualField(playerId),
                        new ActualField("cards"),
-                       new FormalField(Card[].class)
-               )[2];
+                       new FormalField(String.class)
+               )[2]);
 
                // TUI
                systemSpace.get(new ActualField("lock"));
@@ -395,6 +425,47 @@ class TurnWatcher implements Runnable {
     }
 }
 
+// Listen for players running out of time and display it
+class TimeoutWatcher implements Runnable {
+
+    String playerId;
+    RemoteSpace gameSpace;
+    SequentialSpace systemSpace;
+    StartClient startClient;
+
+    public TimeoutWatcher(String playerId, RemoteSpace gameSpace, SequentialSpace systemSpace, StartClient startClient) {
+        this.playerId = playerId;
+        this.gameSpace = gameSpace;
+        this.systemSpace = systemSpace;
+        this.startClient = startClient;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!startClient.gameDone) {
+                String player = (String) gameSpace.get(
+                        new ActualField(playerId),
+                        new ActualField("timedOut"),
+                        new FormalField(String.class)
+                )[2];
+
+                // TUI
+                systemSpace.get(new ActualField("lock"));
+                if (player.equals(playerId)) {
+                    startClient.timedOut = true;
+                    System.out.println("\nYou ran out of time, your turn has ended, press enter");
+                }
+                else System.out.println("\n" + player + " ran out of time");
+                System.out.flush();
+                systemSpace.put("lock");
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
+
 class ListenUNO implements Runnable{
 
     String playerId;
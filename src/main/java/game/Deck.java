@@ -0,0 +1,75 @@
+package game;
+
+import java.util.Random;
+
+// The cards of a game as card ids (see Card): the pile players draw from and the stack they play on
+// The pile is shuffled once up front, so drawing is just taking the last card of the array.
+// When the pile runs out, every card on the stack except the top card is shuffled back into it in one go
+class Deck {
+
+    private final int[] pile;  // The cards to draw from, the next card is at pile[pileSize - 1]
+    private int pileSize;
+    private final int[] stack;  // The played cards, the top card is at stack[stackSize - 1]
+    private int stackSize;
+    private final Random random;
+
+    // The same cards and seed always give the same game
+    Deck(int[] cards, long seed) {
+        this.pile = cards.clone();
+        this.pileSize = cards.length;
+        this.stack = new int[cards.length];
+        this.stackSize = 0;
+        this.random = new Random(seed);
+
+        shuffle();
+    }
+
+    // Draw the next card, flipping the stack if the pile is empty
+    // Returns -1 if there are no cards left to draw (they are all on the players' hands)
+    int draw() {
+        if (pileSize == 0) flip();
+        if (pileSize == 0) return -1;
+
+        return pile[--pileSize];
+    }
+
+    // Put a card on top of the stack
+    void play(int card) {
+        stack[stackSize++] = card;
+    }
+
+    int top() {
+        return stack[stackSize - 1];
+    }
+
+    int pileSize() {
+        return pileSize;
+    }
+
+    int stackSize() {
+        return stackSize;
+    }
+
+    // Move all cards but the top card from the stack back to the pile and shuffle it
+    void flip() {
+        if (stackSize < 2) return;
+
+        int top = top();
+        System.arraycopy(stack, 0, pile, pileSize, stackSize - 1);
+        pileSize += stackSize - 1;
+        stack[0] = top;
+        stackSize = 1;
+
+        shuffle();
+    }
+
+    // Fisher-Yates shuffle of the pile
+    private void shuffle() {
+        for (int i = pileSize - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int card = pile[i];
+            pile[i] = pile[j];
+            pile[j] = card;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package game;
+
+import java.util.Arrays;
+
+// The UNO rules of a game on their own, with no spaces, players ids or threads:
+// the deck, the hands, whose turn it is and what the played cards do (Skip, Reverse, Draw penalties).
+// GameHandler plays a game over the tuple spaces with it, Simulator plays millions of games in memory.
+// The hooks (giveCard, takeCard, putOnStack) are where a subclass hears about every change, and a rule
+// variant is a subclass overriding e.g. isMoveValid or play.
+// Calling UNO is left to GameHandler, it is about the timing of the players' messages, not the cards
+// Not thread safe, a game is played by one thread at a time
+class Engine {
+
+    static final int HAND_SIZE = 7;  // The cards every player is dealt
+    static final int[] CARDS = cards();  // The ids of the 52 cards of a game
+
+    Hand[] hands;  // To keep track of what cards each player has on his hand
+    long seed;  // The seed the deck is shuffled with, the same seed deals the same cards
+    Deck deck;  // The deck from which the players can draw cards and the stack in which they place them
+    int topCard;  // The id of the card on top of the stack
+    int currentPlayer = 0;  // The index of the current player to take turn
+    int previousPlayer;  // The index of the last player to take turn
+    boolean reverse = false;  // True if the order in which the players take turn should be reversed
+    boolean skipNextPlayer = false;  // True if a skip card has been played and the next player should be skipped
+    int penalty = 0;  // The amount of penalty the next player is going to receive
+
+    Engine(int players, long seed) {
+        this.seed = seed;
+        deck = new Deck(CARDS, seed);
+        hands = new Hand[players];
+        for (int i = 0; i < players; i++) hands[i] = new Hand();
+    }
+
+    // Flip the first card to the stack and deal every player his hand
+    void start() {
+        putOnStack(drawCard());
+        for (int i = 0; i < hands.length; i++) givePlayerCards(i, HAND_SIZE);
+    }
+
+    // Results in the deck being filled with the ids of cards like ("red", "3")
+    private static int[] cards() {
+        String[] colors = {
+                "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red",
+                "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow",
+                "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue",
+                "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green",
+                "Black", "Black", "Black", "Black"
+        };
+
+        String[] values = {
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
+                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
+                "Color", "Color", "Draw", "Draw"
+        };
+
+        int[] cards = new int[colors.length];
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = Card.idOf(colors[i], values[i]);
+        }
+        return cards;
+    }
+
+    int players() {
+        return hands.length;
+    }
+
+    // Check is a certain move is valid
+    // Hand.hasMoveOn applies the same rules to a whole hand at once
+    boolean isMoveValid(int card) {
+
+        // If the top card is black, the move is always valid
+        if (Card.colorOf(topCard) == Card.BLACK) return true;
+
+        // If the play card is black, the move is always valid
+        if (Card.colorOf(card) == Card.BLACK) return true;
+
+        // If the colors match, the move is valid
+        if (Card.colorOf(card) == Card.colorOf(topCard)) return true;
+
+        // If the values match, the move is valid
+        if (Card.valueOf(card) == Card.valueOf(topCard)) return true;
+
+        // Else the move is invalid
+        return false;
+    }
+
+    boolean playerHasMoves(int player) {
+        return hands[player].hasMoveOn(topCard);
+    }
+
+    // True if the player has the card and may play it
+    boolean canPlay(int player, int card) {
+        return card >= 0 && isMoveValid(card) && hands[player].contains(card);
+    }
+
+    // A player may only draw a card if he has no valid moves
+    boolean canDraw(int player) {
+        return !playerHasMoves(player);
+    }
+
+    // The lowest card id the player can play, -1 if there is none
+    int playableCard(int player) {
+        if (!playerHasMoves(player)) return -1;
+
+        for (int card = 0; card < Card.IDS; card++)
+            if (canPlay(player, card)) return card;
+        return -1;
+    }
+
+    // The ids of all the cards the player can play, ordered
+    int[] playableCards(int player) {
+        if (!playerHasMoves(player)) return new int[0];
+
+        Hand hand = hands[player];
+        int[] cards = new int[hand.size()];
+        int count = 0;
+        for (int card = 0; card < Card.IDS; card++)
+            if (hand.contains(card) && isMoveValid(card)) cards[count++] = card;
+        return Arrays.copyOf(cards, count);
+    }
+
+    // Play a card from the player's hand, check canPlay first
+    void play(int player, int card) {
+
+        // Add the card to the stack
+        putOnStack(card);
+
+        // Remove the card from the players hand
+        takeCard(player, card);
+
+        // If reverse
+        if (Card.valueOf(card) == Card.REVERSE) reverse = !reverse;
+
+        // If skip
+        if (Card.valueOf(card) == Card.SKIP) skipNextPlayer = true;
+
+        // If penalty
+        if (Card.valueOf(card) == Card.DRAW) {
+            if (Card.colorOf(card) == Card.BLACK) penalty = 4;
+            else penalty = 2;
+        }
+    }
+
+    // Draw a card for the player, check canDraw first
+    // Returns the card, -1 if all cards are on the players' hands and there is nothing to draw
+    int draw(int player) {
+        int card = drawCard();
+        if (card >= 0) giveCard(player, card);
+        return card;
+    }
+
+    // Give the current player the penalty from the last played card, returns the number of cards it was
+    int applyPenalty() {
+        int cards = penalty;
+        if (penalty > 0) {
+            givePlayerCards(currentPlayer, penalty);
+            penalty = 0;
+        }
+        return cards;
+    }
+
+    // Pass the turn to the next player in the current order, skipping one if a Skip was played
+    void advance() {
+
+        // Update previous player
+        previousPlayer = currentPlayer;
+
+        // Update current player
+        int increment = 1;
+        if (skipNextPlayer) {
+            increment++;
+            skipNextPlayer = false;
+        }
+
+        if (!reverse) currentPlayer = (currentPlayer + increment) % hands.length;
+        if (reverse) currentPlayer = ((currentPlayer - increment) + hands.length) % hands.length;
+    }
+
+    // The first player without cards, -1 while there is none
+    int winner() {
+        for (int player = 0; player < hands.length; player++)
+            if (hands[player].size() == 0) return player;
+        return -1;
+    }
+
+    // Assigns a certain amount of random cards to a player drawn from the deck
+    void givePlayerCards(int player, int numberOfCards) {
+        for (int i = 0; i < numberOfCards; i++) {
+            int card = drawCard();
+
+            // Stop if all cards are on the players' hands
+            if (card < 0) return;
+
+            giveCard(player, card);
+        }
+    }
+
+    // Draw a random card from the deck, -1 if there are none left
+    int drawCard() {
+
+        // If the deck is empty flip the stack
+        if (deck.pileSize() < 1) flipTheStack();
+
+        return deck.draw();
+    }
+
+    // Add a card to a player's hand
+    void giveCard(int player, int card) {
+        hands[player].add(card);
+    }
+
+    // Remove a card from a player's hand
+    void takeCard(int player, int card) {
+        hands[player].remove(card);
+    }
+
+    void putOnStack(int card) {
+        deck.play(card);
+        topCard = card;
+    }
+
+    // If there are no more cards in the deck, the stack (but its top card) is shuffled back into it
+    void flipTheStack() {
+        deck.flip();
+    }
+}
@@ -1,16 +1,25 @@
 package game;
 
-import com.google.gson.Gson;
 import org.jspace.*;
+import server.Events;
+import server.Execution;
+import server.Histogram;
+import server.Log;
+import server.Metrics;
+import server.TimingWheel;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
 General template: (playerId, "command", payload)
+Payloads (Action, Board, BoardDelta, Card, Card[], Hints) are strings encoded with the player's WireCodec
 
 SERVER TO CLIENT COMMANDS
 - (playerId, "allReady"): All players are ready to play
@@ -20,470 +29,695 @@ SERVER TO CLIENT COMMANDS
 - (playerId, "cards", Card[]): An array of card is ready for the player to draw
 - (playerId, "invalid"): The played card was invalid
 - (playerId, "success": The request was successful
-- (playerId, "board", Board): The board was updated
+- (playerId, "board", Board): The board was updated (a full snapshot, sent on join, on resync and to players without deltas)
+- (playerId, "delta", BoardDelta): The board was updated, only what changed since the previous seq
 - (playerId, "UNO", receiver, caller): A missing UNO was applied from receiver to caller
 - (playerId, "UNO", caller): The caller successfully called UNO
+- (playerId, "turned", status): The answer to a "turn", "success" or "invalid"
+- (playerId, "hints", Hints): The cards the player may play on the board with the same seq and whether he may draw,
+    sent with every board update to players that asked for them. Only the newest is kept, like with "latest"
+- (playerId, "timedOut", player): player (id) didn't finish his turn in time, the server drew a card for him
+    if he hadn't acted yet and ended his turn. His "take" is taken back if he hadn't read it
 
 
 CLIENT TO SERVER COMMANDS
 - (playerId, "ready"): The player is ready to begin the game
+- (playerId, "ready", options): The player is ready, options is a comma separated list of
+    "delta": board updates as deltas instead of snapshots
+    "latest": only the newest board and cards are kept for the player, a new one replaces the one he hasn't taken yet
+      (deltas are never replaced, they only make sense in order)
+    "hints": a "hints" tuple with every board update, so the player only sends actions that are valid
+    "timeouts": the player's turns have a deadline (see "timeout" below) and he reads "timedOut".
+      Players without it have as long as they want, like before
+    "json" or "binary": the WireCodec for all payloads (json is the default). The player is sent a new snapshot in it
+- (playerId, "resync"): The player wants a full snapshot of the board and his hand
 - (playerId, "ended"): The players ends his turn
-- (playerId, "taken"): The players takes his turn
+- (playerId, "taken", "!"): The players takes his turn
 - (playerId, "action", Action): The player performs an action (play or draw card)
 - (playerId, "UNO"): The player call UNO
 - (playerId, "missingUNO"): A player calls missing UNO on someone else
+- (playerId, "turn", Action, calls): The whole turn in one message, instead of taken, action, UNO and ended,
+    calls is "UNO" to call UNO if the action leaves the player with one card, or "" (it can be left out).
+    It is answered with one "turned" (no "success", "invalid" or "card"). On "invalid" the turn has been taken
+    but nothing else happened, e.g. the penalty gave a player who wanted to draw a card to play, and the player
+    goes on with "action" and "ended" like before. Either way works, the old handshake is still the default
+
+INTERNAL COMMANDS (posted to the mailbox by the server itself, clients cannot send them)
+- ("", "sendBoard"): Send the board, used to delay a board update
+- ("", "timeout", turn): The deadline of turn number turn is over, ignored if that turn has ended already.
+    The turns of players with the "timeouts" option have kameluno.turnTimeout seconds (default 60, 0 for no
+    deadline at all) from their "take"
  */
 
 // Given a game-space this class handles it for the players
-public class GameHandler {
+// The rules are Engine's, this class adds the protocol: whose command is valid when, UNO, and telling the players
+// All client commands are handled in arrival order by the mailbox of the game space (see handle),
+// so the game state is only ever touched by one thread at a time and needs no lock
+// Messages that are the same for every player (takes, UNO, the winner, ...) are broadcast, stored once for all of them
+// Metrics (see server.Metrics): games.started, games.finished, game.commands and game.broadcast.tuples (counts),
+// game.turns.timedOut (counts), game.command (handling one command), game.action, game.turn (taken to ended)
+// and game.broadcast (sendBoard)
+// Delays (the turn deadlines, the board after a missing UNO) are timers on Execution's timing wheel that post
+// an internal command to the mailbox when they fire, no thread sleeps or waits for them
+// Every event that changes the game is logged (see GameLog), so a game can be resumed after the server died
+// JFR events (see server.Events): Turn, Action, PlayCard, DrawCard, Broadcast and Uno, all tagged with the gameId
+public class GameHandler extends Engine {
+
+    private static final LongAdder GAMES_STARTED = Metrics.counter("games.started");
+    private static final LongAdder GAMES_FINISHED = Metrics.counter("games.finished");
+    private static final LongAdder COMMANDS = Metrics.counter("game.commands");
+    private static final LongAdder BROADCAST_TUPLES = Metrics.counter("game.broadcast.tuples");
+    private static final LongAdder TIMED_OUT = Metrics.counter("game.turns.timedOut");
+    private static final Histogram COMMAND = Metrics.histogram("game.command");
+    private static final Histogram ACTION = Metrics.histogram("game.action");
+    private static final Histogram TURN = Metrics.histogram("game.turn");
+    private static final Histogram BROADCAST = Metrics.histogram("game.broadcast");
+
+    static final long TURN_TIMEOUT = Long.getLong("kameluno.turnTimeout", 60);  // Seconds a player has for a turn, 0 for no limit
 
     SpaceRepository gameRepository; // The repository through which the players communicate
-    SequentialSpace gameSpace; // The space through which the players communicate
+    String gameId;  // The name the game is published under, e.g. game3
+    GameSpace gameSpace; // The space through which the players communicate
 
-    int currentPlayer = 0;  // The index of the current player to take turn
-    int previousPlayer;  // The index of the last player to take turn
     boolean missingUNO = false;  // True if the last player forgot to say UNO until the next player takes action
     boolean UNO = false;  // True if the player says UNO
-    Map<String, ArrayList<Card>> hands = new HashMap<>();  // To keep track of what cards each player has on his hand
-
-    String[] playerIds;  // List of all the player's ids
-    RandomSpace deck = new RandomSpace();  // The deck from which the players can draw cards
-    StackSpace stack = new StackSpace();  // The stack in which the players place their cards. Top card is available with a queryp
-    boolean reverse = false;  // True if the order in which the players take turn should be reversed
-    boolean skipNextPlayer = false;  // True if a skip card has been played and the next player should be skipped
-    int penalty = 0;  // The amount of penalty the next player is going to receive
+    boolean[] deltaPlayers;  // True for the players that get board updates as deltas
+    boolean[] latestPlayers;  // True for the players that only want the newest board and hand
+    boolean[] hintPlayers;  // True for the players that get the cards they can play with every board update
+    boolean[] timeoutPlayers;  // True for the players whose turns have a deadline
+    WireCodec[] codecs;  // The codec each player's payloads are encoded with
+    long seq = 0;  // The version of the board, increased every time it is sent
+    int[] handChanges;  // The change in the number of cards on each hand since the board was last sent
+    Hand[] received;  // The cards each player received since the board was last sent
+    Hand[] removed;  // The cards removed from each player's hand since the board was last sent
+    boolean topCardChanged = false;  // True if the top card changed since the board was last sent
+
+    String[] playerIds;  // List of all the player's ids, indexed like hands
+    int readyPlayers = 0;  // The amount of players that have reported ready
+    boolean gameStarted = false;  // False until all players are ready
+    boolean turnTaken = false;  // True once the current player has taken his turn
     boolean turnDone = false;  // A player only gets one action per turn (draw or play a card)
     boolean gameDone = false;  // False until a winner is found
+    long turnTakenAt;  // When the current player took his turn, in System.nanoTime
+    int turnNumber = 0;  // Counts the turns, so a deadline of a turn that has ended is ignored
+    TimingWheel.Timeout deadline;  // The deadline of the current turn, null without one
+    GameLog log;  // Where the game's events are logged, so it can be built back after a restart
 
     // Constructor
-    public GameHandler(SpaceRepository gameRepository, SequentialSpace gameSpace, String[] playerIds) throws InterruptedException {
+    public GameHandler(SpaceRepository gameRepository, GameSpace gameSpace, String[] playerIds) throws InterruptedException {
+        this(gameRepository, "game", gameSpace, playerIds);
+    }
+
+    // Constructor for a game dealt from a given seed, e.g. to reproduce a game
+    public GameHandler(SpaceRepository gameRepository, GameSpace gameSpace, String[] playerIds, long seed) throws InterruptedException {
+        this(gameRepository, "game", gameSpace, playerIds, seed);
+    }
+
+    // Constructor for a game published as gameId, the id shows up in the log and the JFR events
+    public GameHandler(SpaceRepository gameRepository, String gameId, GameSpace gameSpace, String[] playerIds) throws InterruptedException {
+        this(gameRepository, gameId, gameSpace, playerIds, new Random().nextLong());
+    }
+
+    public GameHandler(SpaceRepository gameRepository, String gameId, GameSpace gameSpace, String[] playerIds, long seed) throws InterruptedException {
+        this(gameRepository, gameId, gameSpace, playerIds, seed, GameLog.start(gameId, seed, playerIds));
+    }
 
+    // Constructor for a game logged somewhere else than the server's log, e.g. a test's (see GameLog.Journal)
+    GameHandler(SpaceRepository gameRepository, String gameId, GameSpace gameSpace, String[] playerIds, long seed, GameLog log) throws InterruptedException {
+        super(playerIds.length, seed);
+
+        this.gameId = gameId;
         this.playerIds = playerIds;
         this.gameSpace = gameSpace;
         this.gameRepository = gameRepository;
-
-        // Needed before manipulating shared variables
-        gameSpace.put("lock");
-
-        // Build the board
-        initBoard();
+        this.log = log;
 
         // Start the game
         initGame();
 
         // Start listening
-        listen();
-    }
-
-    // Results in the deck being filled with tuples like ("red", "3")
-    private void initBoard() throws InterruptedException {
-        int numberOfCards = 52;
-
-        String[] colors = {
-                "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red", "Red",
-                "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow", "Yellow",
-                "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue", "Blue",
-                "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green", "Green",
-                "Black", "Black", "Black", "Black"
-        };
-
-        String[] values = {
-                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
-                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
-                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
-                "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse",
-                "Color", "Color", "Draw", "Draw"
-        };
-
-        assert colors.length == numberOfCards;
-        assert values.length == numberOfCards;
-
-        for (int i = 0; i < 52; i++) {
-            deck.put(new Card(colors[i], values[i]));
-        }
+        gameSpace.whenClosed(log::closed);
+        gameSpace.start(this::handle);
+    }
+
+    // A game built back from its log, see GameLog. The events are replayed on it before it is resumed
+    GameHandler(GameLog log, String gameId, long seed, String[] playerIds) {
+        super(playerIds.length, seed);
+
+        this.gameId = gameId;
+        this.playerIds = playerIds;
+        this.gameSpace = new GameSpace();
+        this.log = log;
 
-        // Flip the first card to the stack
-        stack.put(getRandomCardFromDeck());
+        initState();
+        start();
     }
 
     // Initialize the game
     private void initGame() throws InterruptedException {
 
-        // Provide players with cards
-        for (int i = 0; i < playerIds.length; i++) {
-            hands.put(playerIds[i], new ArrayList<>());
-            givePlayerCards(playerIds[i], 7);
-        }
+        Log.info("game.dealt", "game", gameId, "seed", seed, "players", playerIds);
+
+        initState();
+
+        // Flip the first card and provide players with cards
+        start();
 
         // Send the board to all the players to display
         sendBoard();
 
         // Send the player list to all the players
         sendPlayerList();
+    }
 
-        // Wait for all players to be ready
+    private void initState() {
+        deltaPlayers = new boolean[playerIds.length];
+        latestPlayers = new boolean[playerIds.length];
+        hintPlayers = new boolean[playerIds.length];
+        timeoutPlayers = new boolean[playerIds.length];
+        codecs = new WireCodec[playerIds.length];
+        handChanges = new int[playerIds.length];
+        received = new Hand[playerIds.length];
+        removed = new Hand[playerIds.length];
         for (int i = 0; i < playerIds.length; i++) {
-            gameSpace.get(new FormalField(String.class), new ActualField("ready"));
+            codecs[i] = WireCodec.JSON;
+            received[i] = new Hand();
+            removed[i] = new Hand();
         }
+    }
 
-        // Notify players everyone is ready
-        for (int i = 0; i < playerIds.length; i++) {
-            gameSpace.put(playerIds[i], "allReady");
+    // Change the state for an event of the game's log like the live game did, without telling anyone
+    void replay(byte event, int card) {
+        switch (event) {
+            case GameLog.STARTED: gameStarted = true; break;
+            case GameLog.TAKEN: turnTaken = true; applyPenalty(); break;
+            case GameLog.PLAYED: missingUNO = false; play(currentPlayer, card); turnDone = true; break;
+            case GameLog.DREW: missingUNO = false; draw(currentPlayer); turnDone = true; break;
+            case GameLog.UNO: UNO = true; break;
+            case GameLog.MISSING_UNO: givePlayerCards(previousPlayer, 1); missingUNO = false; break;
+            case GameLog.ENDED: endTurn(); break;
         }
+    }
 
-        // Notify first player to start
-        gameSpace.put(playerIds[currentPlayer], "take", "alive");
+    // Publish a replayed game and go on where its log stopped
+    // The players have to connect again and send "ready" to set their options (or to start the game if it hadn't)
+    void resume(SpaceRepository repository) throws InterruptedException {
+        gameRepository = repository;
+        repository.add(gameId, gameSpace);
 
-        startUnoThreads();
-    }
+        // The board and everyone's hand as snapshots, nobody has the deltas before them
+        sendBoard();
+        sendPlayerList();
+        gameSpace.whenClosed(log::closed);
+
+        // Won before it could be closed
+        if (winner() >= 0) {
+            gameDone = true;
+            gameSpace.broadcast(playerIds, "take", playerIds[winner()]);
+            gameSpace.close();
+            return;
+        }
 
-    private void startUnoThreads() {
+        if (gameStarted) {
+            gameSpace.broadcast(playerIds, "allReady");
 
-        // Start to listen for UNO
-        Thread unoThread = new Thread() {
-            public void run() {
-                while (!gameDone) {
-                    try {
-                        checkUno();
-                    } catch (InterruptedException e) { e.printStackTrace(); }
-                }
+            // The action was taken, only the "ended" is missing
+            if (turnDone) {
+                log.ended();
+                endTurn();
             }
-        };
+            startTurn();
+        }
+
+        gameSpace.start(this::handle);
+    }
 
-        unoThread.start();
+    private void sendPlayerList() throws InterruptedException {
+        gameSpace.broadcast(playerIds, "players", playerIds);
+    }
+
+    // Every client command is handled here one at a time
+    private void handle(Object[] command) throws InterruptedException {
+        if (gameDone) return;
+
+        long start = System.nanoTime();
+        COMMANDS.increment();
 
-        // Start to listen for missing UNO
-        Thread missingUnoThread = new Thread() {
-            public void run() {
-                while (!gameDone) {
-                    try {
-                        checkMissingUno();
-                    } catch (InterruptedException e) { e.printStackTrace(); }
+        String playerId = (String) command[0];
+        String payload = command.length > 2 && command[2] instanceof String ? (String) command[2] : null;  // null if it isn't a string
+
+        switch ((String) command[1]) {
+            case "ready": ready(playerId, payload == null ? "" : payload); break;
+            case "resync": sendSnapshot(indexOf(playerId)); break;
+            case "taken": {
+                Events.Turn event = new Events.Turn();
+                event.begin();
+                takeTurn(playerId);
+                if (event.shouldCommit()) event.commit(gameId, playerId, 0);
+                break;
+            }
+            case "action": {
+                Events.Action event = new Events.Action();
+                event.begin();
+                takeAction(playerId, payload);
+                if (event.shouldCommit()) event.commit(gameId, playerId, payload == null ? 0 : payload.length());
+                ACTION.time(start);
+                break;
+            }
+            case "turn": {
+                Events.Action event = new Events.Action();
+                event.begin();
+                turn(playerId, payload, command.length > 3 && "UNO".equals(command[3]));
+                if (event.shouldCommit()) event.commit(gameId, playerId, payload == null ? 0 : payload.length());
+                ACTION.time(start);
+                break;
+            }
+            case "ended": nextPlayer(playerId); break;
+            case "UNO":
+            case "missingUNO": {
+                Events.Uno event = new Events.Uno();
+                event.begin();
+                boolean missing = command[1].equals("missingUNO");
+                if (missing) checkMissingUno(playerId);
+                else checkUno(playerId);
+                if (event.shouldCommit()) {
+                    event.missing = missing;
+                    event.commit(gameId, playerId, 0);
                 }
+                break;
             }
-        };
+            case "sendBoard": sendBoard(); break;
+            case "timeout": timeout((Integer) command[2]); break;
+        }
 
-        missingUnoThread.start();
+        COMMAND.time(start);
+
+        // No more commands once a winner is found
+        if (gameDone) {
+            GAMES_FINISHED.increment();
+            Log.info("game.finished", "game", gameId, "seed", seed, "players", playerIds);
+            if (deadline != null) deadline.cancel();
+            gameSpace.close();
+        }
     }
 
-    private void sendPlayerList() throws InterruptedException {
-        for (int i = 0; i < playerIds.length; i++) {
-            gameSpace.put(playerIds[i], "players", playerIds);
+    // Start the game once all players are ready
+    private void ready(String playerId, String options) throws InterruptedException {
+
+        int player = indexOf(playerId);
+        if (player >= 0) setOptions(player, options);
+
+        // Wait for all players to be ready
+        if (gameStarted || ++readyPlayers < playerIds.length) return;
+
+        gameStarted = true;
+        GAMES_STARTED.increment();
+        log.started();
+
+        // Notify players everyone is ready
+        gameSpace.broadcast(playerIds, "allReady");
+
+        // Notify first player to start
+        startTurn();
+    }
+
+    // Tell the current player to take his turn and start its deadline if he asked for one
+    private void startTurn() throws InterruptedException {
+        turnNumber++;
+        gameSpace.put(playerIds[currentPlayer], "take", "alive");
+
+        if (deadline != null) deadline.cancel();
+        deadline = null;
+        if (TURN_TIMEOUT > 0 && timeoutPlayers[currentPlayer]) {
+            int turn = turnNumber;
+            deadline = Execution.schedule(TURN_TIMEOUT, TimeUnit.SECONDS, () -> gameSpace.post("", "timeout", turn));
         }
     }
 
-    private void listen() throws InterruptedException {
+    // The current player ran out of time: take his turn, draw a card for him if he hasn't acted and end it
+    private void timeout(int turn) throws InterruptedException {
 
-        while(true){
-            takeTurn();
+        // The turn ended before the deadline, the timer was cancelled too late
+        if (!gameStarted || turn != turnNumber) return;
 
-            // Listen for input action
-            while (true)
-                if(takeAction()) break;
+        String playerId = playerIds[currentPlayer];
+        TIMED_OUT.increment();
+        Log.info("game.turnTimedOut", "game", gameId, "player", playerId, "turn", turn);
 
-            // Check if game is done
-            if (isGameDone()) break;
+        // He never read his "take", it would start a turn of his out of order later
+        gameSpace.getp(new ActualField(playerId), new ActualField("take"), new ActualField("alive"));
+
+        takeTurn(playerId);
 
-            nextPlayer();
+        // Drawing is forced, even with a card he could play. If there is nothing to draw he just passes
+        if (!turnDone) {
+            missingUNO = false;
+            int card = draw(currentPlayer);
+            log.drew();
+            if (card >= 0) sendBoard();
+            turnDone = true;
         }
 
-        gameDone = true;
+        gameSpace.broadcast(playerIds, "timedOut", playerId);
+        nextPlayer(playerId);
     }
 
-    private boolean isGameDone() throws InterruptedException {
+    // Apply the options a player reported ready with
+    private void setOptions(int player, String options) throws InterruptedException {
+        WireCodec codec = codecs[player];
+        boolean hints = false;
 
-        // Check all players' hand
-        for (Map.Entry<String, ArrayList<Card>> entry : hands.entrySet()) {
+        for (String option : options.split(",")) {
+            if (option.equals("delta")) deltaPlayers[player] = true;
+            else if (option.equals("latest")) latestPlayers[player] = true;
+            else if (option.equals("hints")) hints = !hintPlayers[player];
+            else if (option.equals("timeouts")) timeoutPlayers[player] = true;
+            else if (WireCodec.named(option) != null) codec = WireCodec.named(option);
+        }
+        hintPlayers[player] |= hints;
+
+        // The join snapshot was sent with the old codec, the new one comes with hints if he wants them
+        if (codec != codecs[player]) {
+            codecs[player] = codec;
+            sendSnapshot(player);
+        } else if (hints) {
+            sendHints(player);
+        }
+    }
 
-            // If a player has won end the game and notify
-            if (entry.getValue().size() == 0) {
-                for (int i = 0; i < playerIds.length; i++) {
-                    gameSpace.put(playerIds[i], "take", entry.getKey());
-                }
-                return true;
-            }
+    private boolean isGameDone() throws InterruptedException {
+        int winner = winner();
+
+        // If a player has won end the game and notify
+        if (winner >= 0) {
+            gameSpace.broadcast(playerIds, "take", playerIds[winner]);
+            return true;
         }
 
         return false;
     }
 
     // Take turn (apply penalty)
-    private void takeTurn() throws InterruptedException {
-
-        // Wait for player to take turn
-        String playerId = (String) gameSpace.get(
-                new FormalField(String.class),
-                new ActualField("taken"),
-                new ActualField("!")
-        )[0];
+    private void takeTurn(String playerId) throws InterruptedException {
 
         // Check playerId
-        if (!isCurrentPlayer(playerId)) return;
+        if (!gameStarted || turnTaken || !isCurrentPlayer(playerId)) return;
+
+        turnTaken = true;
+        turnTakenAt = System.nanoTime();
 
         // Notify other players who took turn
-        for (int i = 0; i < playerIds.length; i++) {
-            gameSpace.put(playerIds[i], "takes", playerId);
+        gameSpace.broadcast(playerIds, "takes", playerId);
+        Log.debug("game.turnTaken", "game", gameId, "player", playerId);
+        log.taken();
+
+        // Apply penalty if any
+        if (applyPenalty() > 0) sendBoard();
+    }
+
+    // Allow a player to take actions (draw or play a card) and tell him if it worked
+    // The player always gets an answer, he is waiting for it
+    private void takeAction(String playerId, String payload) throws InterruptedException {
+        boolean success = false;
+        try {
+            success = act(playerId, payload, true);
+        } finally {
+            gameSpace.put(playerId, success ? "success" : "invalid");
         }
-        System.out.printf("Player:%s ",playerId);
+    }
 
-        mutualExclusion(() -> {
-            // Apply penalty if any
-            if (penalty > 0) {
-                givePlayerCards(playerId, penalty);
-                penalty = 0;
+    // The whole turn of a player in one command, answered with exactly one "turned" whatever happens
+    private void turn(String playerId, String payload, boolean uno) throws InterruptedException {
+        String status = "invalid";
+        try {
+            if (!gameStarted || turnTaken || !isCurrentPlayer(playerId)) return;
+
+            takeTurn(playerId);
 
-                sendBoard();
+            // The turn stays taken, the player can still act the old way
+            if (!act(playerId, payload, false)) return;
+
+            if (!gameDone) {
+                if (uno) checkUno(playerId);
+                nextPlayer(playerId);
             }
-        });
 
+            status = "success";
+        } finally {
+            gameSpace.put(playerId, "turned", status);
+        }
     }
 
-    // Allow a player to take actions (draw or play a card)
-    // Returns true with success
-    private boolean takeAction() throws InterruptedException {
+    // Draw or play a card, returns true if it was valid
+    // sendCard is false if the player doesn't want a "card" tuple for a drawn card, he gets it with the board
+    private boolean act(String playerId, String payload, boolean sendCard) throws InterruptedException {
 
         boolean success = false;
 
-        // Listen for action
-        Object[] request = gameSpace.get(
-                new FormalField(String.class),
-                new ActualField("action"),
-                new FormalField(String.class)  // was new FormalField(Action.class)
-        );
-        Gson gson = new Gson();
-
-        String playerId = (String) request[0];
-        Action action = gson.fromJson((String) request[2],Action.class); // was Action action = (Action) request[2];
-
-        System.out.println("action acitvated " +action.getAction());
+        int player = indexOf(playerId);
+        Action action = (player < 0 ? WireCodec.JSON : codecs[player]).readAction(payload);
 
-        // The current player can only do one action per turn and only
-        if (turnDone || !isCurrentPlayer(playerId)) {
-            gameSpace.put(playerId, "invalid");
+        // Not an action the codec can read, e.g. a broken client
+        if (action == null) {
+            Log.debug("game.badAction", "game", gameId, "player", playerId);
             return false;
-        };
+        }
 
-        // Make sure missing UNO is false before continuing to avoid race conditions
-        mutualExclusion(() -> {
-            missingUNO = false;
-        });
+        Log.debug("game.action", "game", gameId, "player", playerId, "action", action.getAction());
+
+        // The current player can only do one action per turn and only after taking it
+        if (turnDone || !turnTaken || !isCurrentPlayer(playerId)) return false;
 
         // If a card was played
-        if (action.getAction().equals(Actions.PLAY))
-            success = playACard(playerId, action.getCard());
+        if (action.getAction().equals(Actions.PLAY)) {
+            Events.PlayCard event = new Events.PlayCard();
+            event.begin();
+            success = playACard(Card.idOf(action.getCard()));
+            if (event.shouldCommit()) event.commit(gameId, playerId, payload.length());
+        }
 
         // If the player chose to draw a card
-        if (action.getAction().equals(Actions.DRAW))
-            success = drawACard(playerId);
+        if (action.getAction().equals(Actions.DRAW)) {
+            Events.DrawCard event = new Events.DrawCard();
+            event.begin();
+            success = drawACard(playerId, sendCard);
+            if (event.shouldCommit()) event.commit(gameId, playerId, payload.length());
+        }
 
         if (success) {
+            // The next player has acted, so it is too late to call missing UNO
+            // Only a valid action closes it, it is logged as PLAYED or DREW and replay clears it the same way
+            missingUNO = false;
+
             // Disable possibility for more actions
             turnDone = true;
-            return true;
+
+            // Check if game is done
+            if (isGameDone()) gameDone = true;
         }
 
-        return false;
+        return success;
     }
 
     // Notify next player (increment currentPlayer and previousPlayer)
-    private void nextPlayer() throws InterruptedException {
+    private void nextPlayer(String playerId) throws InterruptedException {
 
-        // Wait for the current player to end his turn
-        String playerId = (String) gameSpace.get(new FormalField(String.class), new ActualField("ended"))[0];
+        // Only the current player can end his turn and only after his action
+        if (!turnDone || !isCurrentPlayer(playerId)) return;
 
-        mutualExclusion(() -> {
-            // Check for missing UNO
-            if (hands.get(playerIds[currentPlayer]).size() == 1 && UNO == false)
-                missingUNO = true;
+        TURN.time(turnTakenAt);
+        log.ended();
+        endTurn();
 
-            // Reset UNO
-            UNO = false;
+        // Notify next player to start
+        startTurn();
+    }
 
-            // Check playerId
-            if (!isCurrentPlayer(playerId)) return;
+    // Pass the turn on, the state change of "ended"
+    private void endTurn() {
 
-            // Update previous player
-            previousPlayer = currentPlayer;
+        // Check for missing UNO
+        if (hands[currentPlayer].size() == 1 && UNO == false)
+            missingUNO = true;
 
-            // Update current player
-            int increment = 1;
-            if (skipNextPlayer) {
-                increment++;
-                skipNextPlayer = false;
-            }
+        // Reset UNO
+        UNO = false;
 
-            if (!reverse) currentPlayer = (currentPlayer + increment) % playerIds.length;
-            if (reverse) currentPlayer = ((currentPlayer - increment) + playerIds.length) % playerIds.length;
+        // Update previous and current player
+        advance();
 
-            // Enable move for next player
-            turnDone = false;
-        });
-
-        // Notify next player to start
-        gameSpace.put(playerIds[currentPlayer], "take", "alive");
+        // Enable move for next player
+        turnTaken = false;
+        turnDone = false;
     }
 
-    // Play a card (disable UNO, save penalty, respond with status)
+    // Play a card (disable UNO, save penalty)
     // Returns true with success
-    private boolean playACard(String playerId, Card card) throws InterruptedException {
+    private boolean playACard(int card) throws InterruptedException {
 
         // Check the move is valid
-        if (!isMoveValid(card) || !isPlayersCard(playerId, card)) {
-            gameSpace.put(playerId, "invalid");
-            return false;
-        }
-
-        // Add the card to the stack
-        stack.put(card);
+        if (!canPlay(currentPlayer, card)) return false;
 
-        // Remove the card from the players hand
-        removeCardFromPlayer(playerId, card);
-
-        // If reverse
-        if (card.value.equals("Reverse")) reverse = !reverse;
-
-        // If skip
-        if (card.value.equals("Skip")) skipNextPlayer = true;
-
-        // If penalty
-        if (card.value.equals("Draw")) {
-            if (card.color.equals("Black")) penalty = 4;
-            else penalty = 2;
-        }
+        // Put it on the stack and apply its effect (see Engine.play)
+        play(currentPlayer, card);
+        log.played(card);
 
         // Notify players of change in board if game is not done
-        if (!isGameDone())
+        if (winner() < 0)
             sendBoard();
 
-        // Respond with success
-        gameSpace.put(playerId, "success");
-
         return true;
     }
 
-    // Removes a card from a player's hand
-    private void removeCardFromPlayer(String playerId, Card card) throws InterruptedException {
-        ArrayList<Card> playerHand = hands.get(playerId);
-
-        // Loop through cards on player's hand to find match
-        for (int i = 0; i < playerHand.size(); i++) {
-            Card cardOnHand = playerHand.get(i);
+    // Add a card to a player's hand and remember the change for the next board update
+    @Override
+    void giveCard(int player, int card) {
+        super.giveCard(player, card);
+        received[player].add(card);
+        handChanges[player]++;
+    }
 
-            // If there is a match
-            if (cardOnHand.equals(card)) {
-                playerHand.remove(i);
-                return;
-            }
-        }
+    // Remove a card from a player's hand and remember the change for the next board update
+    @Override
+    void takeCard(int player, int card) {
+        super.takeCard(player, card);
+        removed[player].add(card);
+        handChanges[player]--;
     }
 
-    // Check whether a given card exists on a player's hand
-    private boolean isPlayersCard(String playerId, Card claimCard) {
-        ArrayList<Card> playerHand = hands.get(playerId);
+    // Send the board to all the players
+    // Players with deltas only get what changed since the last board, the others get a full snapshot
+    void sendBoard() throws InterruptedException {
+        long start = System.nanoTime();
+        Events.Broadcast event = new Events.Broadcast();
+        event.begin();
+        long payloadChars = 0;
+        int tuples = 0;
+        seq++;
 
-        // Loop through cards on player's hand to search for match
-        for (int i = 0; i < playerHand.size(); i++) {
-            Card trueCard = playerHand.get(i);
+        // The board is the same for everyone, so it is only encoded once per codec
+        String[] boards = new String[WireCodec.CODECS.length];
 
-            // If there is a match
-            if (trueCard.equals(claimCard)) return true;
-        }
+        // Only the players whose hand changed
+        Map<String, Integer> changes = new HashMap<>();
+        for (int i = 0; i < playerIds.length; i++)
+            if (handChanges[i] != 0) changes.put(playerIds[i], handChanges[i]);
 
-        return false;
-    }
+        Card top = topCardChanged ? Card.of(topCard) : null;
+
+        // The players the board snapshot is broadcast to, by codec
+        List<List<String>> recipients = new ArrayList<>(WireCodec.CODECS.length);
+        for (int c = 0; c < WireCodec.CODECS.length; c++) recipients.add(new ArrayList<>());
 
-    // Send the board to all the players
-    private void sendBoard() throws InterruptedException {
-        Board board = getBoard();
-        Gson gson = new Gson();
         // Send the new board and the players' hand to everyone
         for (int i = 0; i < playerIds.length; i++) {
-            gameSpace.put(playerIds[i], "board", gson.toJson(board)); // was gameSpace.put(playerIds[i], "board", board);
-            gameSpace.put(playerIds[i], "cards", gson.toJson(arraylistToArray(hands.get(playerIds[i]))));
-            System.out.printf("Player,cards,%s\n",gson.toJson(arraylistToArray(hands.get(playerIds[i]))));
-            //gameSpace.put(playerIds[i], "cards", "Test");
-        }
-    }
-
-    public Board getBoard() {
+            WireCodec codec = codecs[i];
+
+            if (deltaPlayers[i]) {
+                BoardDelta delta = new BoardDelta(seq, top, changes, received[i].toCards(), removed[i].toCards());
+                String encoded = codec.encodeDelta(delta);
+                gameSpace.put(playerIds[i], "delta", encoded);
+                BROADCAST_TUPLES.increment();
+                tuples++;
+                payloadChars += encoded.length();
+            } else {
+                if (boards[codec.id()] == null) boards[codec.id()] = codec.encodeBoard(getBoard());
+                String cards = codec.encodeCards(hands[i].toCards());
+                // A latest only board replaces the player's unread one, so it can't be shared
+                if (latestPlayers[i]) putState(i, "board", boards[codec.id()]); // was gameSpace.put(playerIds[i], "board", board);
+                else recipients.get(codec.id()).add(playerIds[i]);
+                putState(i, "cards", cards);
+                BROADCAST_TUPLES.add(2);
+                tuples += 2;
+                payloadChars += boards[codec.id()].length() + cards.length();
+                if (Log.debug()) Log.debug("game.cards", "game", gameId, "player", playerIds[i], "cards", cards);
+            }
 
-        Card topCard = getTopCard();
+            if (hintPlayers[i]) {
+                sendHints(i);
+                BROADCAST_TUPLES.increment();
+                tuples++;
+            }
 
-        // Count number of cards on each player's hand
-        Map<String, Integer> handsCount = new HashMap<>();
-        for (Map.Entry<String, ArrayList<Card>> entry : hands.entrySet())
-            handsCount.put(entry.getKey(), entry.getValue().size());
+            handChanges[i] = 0;
+            received[i].clear();
+            removed[i].clear();
+        }
 
-        return new Board(topCard, handsCount);
-    }
+        for (int c = 0; c < WireCodec.CODECS.length; c++)
+            if (!recipients.get(c).isEmpty()) gameSpace.broadcast(recipients.get(c).toArray(), "board", boards[c]);
 
-    // Allow a player to draw a random card from the deck
-    // Returns true with success
-    private boolean drawACard(String playerId) throws InterruptedException {
-        Gson gson = new Gson();
-        // Only allow a player to draw a card if the player has no valid moves
-        if (playerHasMoves(playerId)) {
-            gameSpace.put(playerId, "invalid");
-            return false;
+        topCardChanged = false;
+        BROADCAST.time(start);
+        if (event.shouldCommit()) {
+            event.tuples = tuples;
+            event.commit(gameId, "", payloadChars);
         }
+    }
 
-        Card card = getRandomCardFromDeck();
+    // Send the full board and hand to a single player, e.g. when his deltas got out of order
+    private void sendSnapshot(int player) throws InterruptedException {
+        if (player < 0) return;
 
-        // Send card to player
-        gameSpace.put(playerId, "card", gson.toJson(card)); // was gameSpace.put(playerId, "card", card);
+        WireCodec codec = codecs[player];
+        putState(player, "board", codec.encodeBoard(getBoard()));
+        putState(player, "cards", codec.encodeCards(hands[player].toCards()));
+        if (hintPlayers[player]) sendHints(player);
+    }
 
-        // Add card to player's hand
-        hands.get(playerId).add(card);
+    // Send the player the cards he may play now and whether he may draw, replacing the hints he hasn't read
+    private void sendHints(int player) throws InterruptedException {
+        int[] playable = playableCards(player);
+        Card[] cards = new Card[playable.length];
+        for (int i = 0; i < playable.length; i++) cards[i] = Card.of(playable[i]);
 
-        // Notify other players of change
-        sendBoard();
+        gameSpace.putLatest(playerIds[player], "hints", codecs[player].encodeHints(new Hints(seq, cards, canDraw(player))));
+    }
 
-        // Respond with success
-        gameSpace.put(playerId, "success");
-        return true;
+    // Put a board or cards snapshot, replacing the unread one if the player only wants the latest
+    private void putState(int player, String command, String payload) throws InterruptedException {
+        if (latestPlayers[player]) gameSpace.putLatest(playerIds[player], command, payload);
+        else gameSpace.put(playerIds[player], command, payload);
     }
 
-    private boolean playerHasMoves(String playerId) {
-        ArrayList<Card> hand = hands.get(playerId);
+    public Board getBoard() {
 
-        // Check for valid moves
-        for (int i = 0; i < hand.size(); i++) {
-            if (isMoveValid(hand.get(i)))
-                return true;
-        }
+        // Count number of cards on each player's hand
+        Map<String, Integer> handsCount = new HashMap<>();
+        for (int i = 0; i < playerIds.length; i++)
+            handsCount.put(playerIds[i], hands[i].size());
 
-        return false;
+        return new Board(seq, Card.of(topCard), handsCount);
     }
 
-    // Assigns a certain amount of random cards to a player drawn from the deck
-    private void givePlayerCards(String playerId, int numberOfCards) throws InterruptedException {
-        Card[] cards = new Card[numberOfCards];
+    // Allow a player to draw a random card from the deck
+    // Returns true with success
+    private boolean drawACard(String playerId, boolean sendCard) throws InterruptedException {
+        // Only allow a player to draw a card if the player has no valid moves
+        if (!canDraw(currentPlayer)) return false;
 
-        for (int i = 0; i < numberOfCards; i++) {
-            Card card = getRandomCardFromDeck();
-            cards[i] = card;
-            hands.get(playerId).add(card);
-        }
-    }
+        // Add a card to the player's hand
+        int card = draw(currentPlayer);
+        log.drew();
 
-    private Card[] arraylistToArray(ArrayList<Card> list) {
-        Card[] cards = new Card[list.size()];
+        // If all cards are on the players' hands there is nothing to draw and the player passes
+        if (card >= 0) {
 
-        // Loop through cards
-        for (int i = 0; i < list.size(); i++) {
-            cards[i] = list.get(i);
+            // Send card to player
+            if (sendCard) gameSpace.put(playerId, "card", codecs[currentPlayer].encodeCard(Card.of(card))); // was gameSpace.put(playerId, "card", card);
+
+            // Notify other players of change
+            sendBoard();
         }
 
-        return cards;
+        return true;
     }
 
-    // Draw a random card from the deck
-    private Card getRandomCardFromDeck() throws InterruptedException {
-
-        // If the deck is empty flip the stack
-        if (deck.size() < 1) flipTheStack();
-
-        return (Card) deck.getp(new FormalField(Card.class))[0];
+    // The index of a player in playerIds, -1 if he is not in the game
+    private int indexOf(String playerId) {
+        for (int i = 0; i < playerIds.length; i++)
+            if (playerIds[i].equals(playerId)) return i;
+        return -1;
     }
 
     // Checks if a giving player ID is the one currently playing
@@ -491,128 +725,77 @@ public class GameHandler {
         return playerId.equals(playerIds[currentPlayer]);
     }
 
-    // Check is a certain move is valid
-    private boolean isMoveValid(Card card) {
-
-        Card topCard = getTopCard();
-
-        // If the top card is black, the move is always valid
-        if (topCard.color.equals("Black")) return true;
-
-        // If the play card is black, the move is always valid
-        if (card.color.equals("Black")) return true;
-
-        // If the colors match, the move is valid
-        if (card.color.equals(topCard.color)) return true;
-
-        // If the values match, the move is valid
-        if (card.value.equals(topCard.value)) return true;
-
-        // Else the move is invalid
-        return false;
-    }
-
-    private Card getTopCard() {
-        return (Card) stack.queryp(new FormalField(Card.class))[0];
-    }
-
-    // If there are no more cards in the deck, the stack needs to be added back
-    private void flipTheStack() throws InterruptedException {
-
-        // Save the top card to keep in stack
-        Card topCard = getTopCard();
-
-        // Get the others cards from the stack and add them back to the deck
-        while(stack.size() > 0) {
-            Card card = (Card) stack.getp(new FormalField(Card.class))[0];
-            deck.put(card);
-        }
-
-        stack.put(topCard);
+    @Override
+    void putOnStack(int card) {
+        super.putOnStack(card);
+        topCardChanged = true;
     }
 
     // Allow a player to call UNO while playing
-    private void checkUno() throws InterruptedException {
-
-        String playerId = (String) gameSpace.get(
-                new FormalField(String.class),
-                new ActualField("UNO")
-        )[0];
+    private void checkUno(String playerId) throws InterruptedException {
 
-        mutualExclusion(() -> {
-            // Check playerId
-            if (!isCurrentPlayer(playerId)) return;
+        // Check playerId
+        if (!isCurrentPlayer(playerId)) return;
 
-            // Check turn is done
-            if (!turnDone) return;
+        // Check turn is done
+        if (!turnDone) return;
 
-            // Check UNO is not already called
-            if (UNO) return;
+        // Check UNO is not already called
+        if (UNO) return;
 
-            // Check there is indeed UNO
-            if (!isUNO(playerId)) return;
+        // Check there is indeed UNO
+        if (!isUNO(playerId)) return;
 
-            UNO = true;
+        UNO = true;
+        log.uno();
 
-            // Notify players UNO was called successfully
-            for (int i = 0; i < playerIds.length; i++) {
-                gameSpace.put(playerIds[i], "UNO", playerId);
-            }
-            System.out.printf("UNO called by: %s\n",playerId);
-        });
+        // Notify players UNO was called successfully
+        gameSpace.broadcast(playerIds, "UNO", playerId);
+        Log.info("game.uno", "game", gameId, "player", playerId);
     }
 
     private boolean isUNO(String playerId) {
-        return hands.get(playerId).size() == 1;
+        return hands[currentPlayer].size() == 1;
     }
 
-    private void checkMissingUno() throws InterruptedException {
-        String playerId = (String) gameSpace.get(
-                new FormalField(String.class),
-                new ActualField("missingUNO")
-        )[0];
-
-        mutualExclusion(() -> {
-            if (missingUNO) {
-
-                // Punish previous players
-                givePlayerCards(playerIds[previousPlayer], 1);
+    private void checkMissingUno(String playerId) throws InterruptedException {
+        if (missingUNO) {
 
-                // Reset missing UNO
-                missingUNO = false;
-
-                // Notify players
-                for (int i = 0; i < playerIds.length; i++) {
-                    gameSpace.put(
-                            playerIds[i],
-                            "UNO",
-                            playerIds[previousPlayer],
-                            playerId
-
-                    );
-                }
-                System.out.printf("Missing UNO called by: %s on: %s\n",playerId, playerIds[previousPlayer]);
+            // Punish previous players
+            givePlayerCards(previousPlayer, 1);
+            log.missingUno();
 
-                TimeUnit.SECONDS.sleep(1);
-                sendBoard();
-            }
-        });
-    }
+            // Reset missing UNO
+            missingUNO = false;
 
-    // Only one at a time is allowed access to the gameSpace through mutualExclusion
-    private void mutualExclusion(Callable callable) throws InterruptedException {
-        gameSpace.get(new ActualField("lock"));
-        callable.call();
-        gameSpace.put("lock");
-    }
+            // Notify players
+            gameSpace.broadcast(playerIds, "UNO", playerIds[previousPlayer], playerId);
+            Log.info("game.missingUno", "game", gameId, "caller", playerId, "player", playerIds[previousPlayer]);
 
-    interface Callable {
-        public void call() throws InterruptedException;
+            // Give the players a second to see the UNO before the board changes, without holding a thread
+            Execution.schedule(1, TimeUnit.SECONDS, () -> gameSpace.post("", "sendBoard"));
+        }
     }
 }
 
 // A template for a single card in the deck
+// Internally a card is a small int id (color * VALUES.length + value). Card objects are
+// only used at the wire boundary, where there is one shared instance per id
 class Card {
+    static final String[] COLORS = { "Red", "Yellow", "Blue", "Green", "Black" };
+    static final String[] VALUES = { "1", "2", "3", "4", "5", "6", "7", "8", "9", "Skip", "Draw", "Reverse", "Color" };
+    static final int BLACK = 4;  // Index of "Black" in COLORS
+    static final int SKIP = 9, DRAW = 10, REVERSE = 11;  // Indexes of the action values in VALUES
+    static final int IDS = COLORS.length * VALUES.length;  // The number of possible card ids
+
+    private static final Card[] CARDS = new Card[IDS];
+
+    static {
+        for (int color = 0; color < COLORS.length; color++)
+            for (int value = 0; value < VALUES.length; value++)
+                CARDS[id(color, value)] = new Card(COLORS[color], VALUES[value]);
+    }
+
     String color;
     String value;
 
@@ -628,6 +811,30 @@ class Card {
         return (this.color.equals(card.color) &&
                 this.value.equals(card.value));
     }
+
+    static int id(int color, int value) { return color * VALUES.length + value; }
+    static int colorOf(int card) { return card / VALUES.length; }
+    static int valueOf(int card) { return card % VALUES.length; }
+
+    // The shared instance for a card id
+    static Card of(int card) { return CARDS[card]; }
+
+    // The id of a card, or -1 if there is no such card
+    static int idOf(Card card) {
+        return card == null ? -1 : idOf(card.color, card.value);
+    }
+
+    static int idOf(String color, String value) {
+        int c = indexOf(COLORS, color);
+        int v = indexOf(VALUES, value);
+        return c < 0 || v < 0 ? -1 : id(c, v);
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(name)) return i;
+        return -1;
+    }
 }
 
 // Actions a player can preform during a round
@@ -654,20 +861,72 @@ class Action {
 }
 
 class Board {
+    long seq;
     Card topCard;
     Map<String, Integer> hands;
 
-    public Board(Card topCard, Map<String, Integer> playerHands) {
+    public Board(long seq, Card topCard, Map<String, Integer> playerHands) {
+        this.seq = seq;
         this.topCard = topCard;
         this.hands = playerHands;
     }
 
+    public long getSeq() { return seq; }
+
     public Card getTopCard() { return topCard; }
     public Map<String, Integer> getHands() { return hands; }
 
     public void setTopCard(Card topCard) { this.topCard = topCard; }
 }
 
+// The changes to the board since the previous seq, as seen by one player
+// A client applies it on top of the board with seq - 1, if it has another seq it sends "resync"
+class BoardDelta {
+    long seq;
+    Card topCard;  // The new top card, null if unchanged
+    Map<String, Integer> hands;  // The change in number of cards for the players whose hand changed
+    Card[] received;  // The cards added to the player's own hand
+    Card[] removed;  // The cards removed from the player's own hand
+
+    public BoardDelta(long seq, Card topCard, Map<String, Integer> hands, Card[] received, Card[] removed) {
+        this.seq = seq;
+        this.topCard = topCard;
+        this.hands = hands;
+        this.received = received;
+        this.removed = removed;
+    }
+
+    public long getSeq() { return seq; }
+    public Card getTopCard() { return topCard; }
+    public Map<String, Integer> getHands() { return hands; }
+    public Card[] getReceived() { return received; }
+    public Card[] getRemoved() { return removed; }
+}
+
+// What a player may do on the board with the same seq, computed by the server
+class Hints {
+    long seq;
+    Card[] playable;  // The cards on the player's hand that are valid moves, ordered by id
+    boolean canDraw;  // True if the player may draw instead, i.e. nothing is playable
+
+    public Hints(long seq, Card[] playable, boolean canDraw) {
+        this.seq = seq;
+        this.playable = playable;
+        this.canDraw = canDraw;
+    }
+
+    public long getSeq() { return seq; }
+    public Card[] getPlayable() { return playable; }
+    public boolean canDraw() { return canDraw; }
+
+    // True if playing the card would be accepted
+    public boolean allows(Card card) {
+        for (Card valid : playable)
+            if (Card.idOf(valid) == Card.idOf(card)) return true;
+        return false;
+    }
+}
+
 // Listen for request for instance variables and responds with them
 class Debug implements Runnable {
 
@@ -701,27 +960,21 @@ class Debug implements Runnable {
                     // Convert handler.hands to traditional Array for jSpace
                     // Find the longest hand in hands
                     int record = 0;
-                    for (Map.Entry<String, ArrayList<Card>> entry : handler.hands.entrySet()) {
-                        if (entry.getValue().size() > 0)
-                            record = entry.getValue().size();
+                    for (Hand hand : handler.hands) {
+                        record = Math.max(record, hand.size());
                     }
 
                     // One row per player and enough columns for playerIds and all cards
-                    String[][] hands = new String[handler.hands.size()][record + 1];
+                    String[][] hands = new String[handler.hands.length][record + 1];
 
-                    // Start rows with playerIds
-                    for (int i = 0; i < handler.hands.size(); i++) {
+                    // Do the mapping, starting rows with playerIds
+                    for (int i = 0; i < handler.hands.length; i++) {
                         hands[i][0] = handler.playerIds[i];
-                    }
 
-                    // Do the mapping
-                    int counter = 0;
-                    for (Map.Entry<String, ArrayList<Card>> entry : handler.hands.entrySet()) {
-                        ArrayList<Card> hand = entry.getValue();
-                        for (int i = 1; i < hand.size() + 1; i++) {
-                            hands[counter][i] = hand.get(i - 1).getColor() + " " + hand.get(i - 1).getValue();
+                        Card[] hand = handler.hands[i].toCards();
+                        for (int j = 1; j < hand.length + 1; j++) {
+                            hands[i][j] = hand[j - 1].getColor() + " " + hand[j - 1].getValue();
                         }
-                        counter++;
                     }
 
                     // Send output
@@ -738,7 +991,7 @@ class Server {
     public static void main(String[] args) throws InterruptedException, IOException {
         SpaceRepository spaceRepository = new SpaceRepository();
         spaceRepository.addGate("tcp://localhost:31415/?keep");
-        SequentialSpace gameSpace = new SequentialSpace();
+        GameSpace gameSpace = new GameSpace();
         spaceRepository.add("gameId", gameSpace);
 
         new GameHandler(spaceRepository, gameSpace, new String[]{"Mark", "Talha", "Volkan"}); // , "Volkan", "Mikkel"
@@ -0,0 +1,224 @@
+package game;
+
+import org.jspace.SpaceRepository;
+import server.EventLog;
+import server.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The events of every game in the server's EventLog (see server.EventLog), so the live games can be built back
+// after the server died. Only what the Engine needs is logged, a few bytes per event: [event][game key][card].
+// The cards drawn are not, a game is dealt and shuffled from its seed, so the same events on a new Engine
+// with the same seed draw the same cards. The log is read once when this class is loaded, the events are replayed
+// on GameHandlers in memory (see GameHandler.replay) and the games are published by resume.
+// A game's events are released when its space is closed (finished, reaped or replaced), so the segments of the log
+// that only have closed games in them are deleted.
+// The log is only written if kameluno.eventLog is set, see EventLog. The log and its games are a Journal,
+// the server's is opened with this class, a test can open its own
+public class GameLog {
+
+    static final byte START = 1;  // seed, gameId, player ids
+    static final byte STARTED = 2;  // All players are ready
+    static final byte TAKEN = 3;  // The current player took his turn, and his penalty
+    static final byte PLAYED = 4;  // card
+    static final byte DREW = 5;  // Drawn for the current player, also when he timed out
+    static final byte UNO = 6;
+    static final byte MISSING_UNO = 7;  // The previous player got a card for not calling UNO
+    static final byte ENDED = 8;  // The turn passed to the next player
+    static final byte CLOSED = 9;  // Nothing more to recover
+
+    private static final Journal JOURNAL = Journal.fromProperties();  // null without a log
+
+    private final Journal journal;  // null without a log
+    final int key;  // The game's key in the log, game ids are reused after a restart
+    private final long start;  // The position of the game's first event
+    private final ByteBuffer record = ByteBuffer.allocate(6);  // A game is only played by one thread at a time
+    private volatile boolean closed = false;
+
+    private GameLog(Journal journal, int key, long start) {
+        this.journal = journal;
+        this.key = key;
+        this.start = start;
+    }
+
+    // Log the start of a new game in the server's log
+    static GameLog start(String gameId, long seed, String[] playerIds) {
+        return JOURNAL == null ? new GameLog(null, 0, -1) : JOURNAL.start(gameId, seed, playerIds);
+    }
+
+    void started() { event(STARTED, -1); }
+    void taken() { event(TAKEN, -1); }
+    void played(int card) { event(PLAYED, card); }
+    void drew() { event(DREW, -1); }
+    void uno() { event(UNO, -1); }
+    void missingUno() { event(MISSING_UNO, -1); }
+    void ended() { event(ENDED, -1); }
+
+    // The game's space was closed, it is not recovered anymore. Called by whatever thread closed it
+    void closed() {
+        if (journal == null || closed) return;
+        closed = true;
+
+        ByteBuffer record = ByteBuffer.allocate(5);
+        record.put(CLOSED).putInt(key).flip();
+        journal.append(key, record);
+        journal.release(start);
+    }
+
+    private void event(byte event, int card) {
+        if (journal == null || closed) return;
+
+        record.clear();
+        record.put(event).putInt(key);
+        if (card >= 0) record.put((byte) card);
+        record.flip();
+        journal.append(key, record);
+    }
+
+    // Publish the games that were still open in the server's log under their old ids and go on with them
+    // Returns the spaces by game id. Only the first call gets them
+    public static Map<String, GameSpace> resume(SpaceRepository repository) throws InterruptedException {
+        return JOURNAL == null ? new LinkedHashMap<>() : JOURNAL.resume(repository);
+    }
+
+    // An EventLog with the games in it: the games it left open, and the keys for new ones
+    // The server has one (kameluno.eventLog), a test can open its own
+    static class Journal {
+
+        EventLog log;  // Set once it is opened
+        final Map<Integer, GameHandler> replayed = new LinkedHashMap<>();  // The games the log left open, by key
+        private final ConcurrentSkipListSet<Long> starts = new ConcurrentSkipListSet<>();  // Of the open games
+        private final AtomicInteger keys = new AtomicInteger(0);  // The last key in the log
+
+        private Journal() {
+        }
+
+        // The server's log, null if there is none or it couldn't be opened
+        private static Journal fromProperties() {
+            long begin = System.nanoTime();
+            Journal journal = new Journal();
+            try {
+                journal.log = EventLog.fromProperties(journal::replay);
+            } catch (IOException e) {
+                Log.error("gameLog.openFailed", "error", e);
+            }
+            if (journal.log == null) return null;
+
+            Log.info("gameLog.replayed", "games", journal.replayed.size(), "ms", (System.nanoTime() - begin) / 1_000_000);
+            return journal;
+        }
+
+        // Open the log in the directory and replay the games in it
+        static Journal open(Path dir, int segmentSize) throws IOException {
+            Journal journal = new Journal();
+            journal.log = EventLog.open(dir, segmentSize, 5, TimeUnit.MILLISECONDS, journal::replay);
+            return journal;
+        }
+
+        GameLog start(String gameId, long seed, String[] playerIds) {
+            ByteBuffer record = ByteBuffer.allocate(1 + 4 + 8 + size(gameId) + 1 + size(playerIds));
+            int key = keys.incrementAndGet();
+            record.put(START).putInt(key).putLong(seed);
+            putString(record, gameId);
+            record.put((byte) playerIds.length);
+            for (String playerId : playerIds) putString(record, playerId);
+            record.flip();
+
+            // Taken before the game's first event, so its segment can't be released in between
+            long start;
+            synchronized (starts) {
+                start = log.position();
+                starts.add(start);
+            }
+
+            append(key, record);
+            return new GameLog(this, key, start);
+        }
+
+        private void append(int key, ByteBuffer record) {
+            try {
+                log.append(record);
+            } catch (IOException | RuntimeException e) {
+                Log.error("gameLog.appendFailed", "key", key, "error", e);
+            }
+        }
+
+        private void release(long start) {
+            synchronized (starts) {
+                starts.remove(start);
+                log.release(starts.isEmpty() ? log.position() : starts.first());
+            }
+        }
+
+        // Build the games back from their events, called for every record while the log is opened
+        private void replay(long position, ByteBuffer record) {
+            byte event = record.get();
+            int key = record.getInt();
+
+            // New games never reuse a key that is still in the log
+            if (key > keys.get()) keys.set(key);
+
+            if (event == START) {
+                long seed = record.getLong();
+                String gameId = getString(record);
+                String[] playerIds = new String[record.get()];
+                for (int i = 0; i < playerIds.length; i++) playerIds[i] = getString(record);
+
+                starts.add(position);
+                replayed.put(key, new GameHandler(new GameLog(this, key, position), gameId, seed, playerIds));
+                return;
+            }
+
+            // The start of the game is in a segment that was deleted, it was closed
+            GameHandler game = replayed.get(key);
+            if (game == null) return;
+
+            if (event == CLOSED) {
+                replayed.remove(key);
+                starts.remove(game.log.start);
+            } else {
+                game.replay(event, record.hasRemaining() ? record.get() : -1);
+            }
+        }
+
+        Map<String, GameSpace> resume(SpaceRepository repository) throws InterruptedException {
+            Map<String, GameSpace> spaces = new LinkedHashMap<>();
+
+            synchronized (replayed) {
+                for (GameHandler game : replayed.values()) {
+                    game.resume(repository);
+                    spaces.put(game.gameId, game.gameSpace);
+                    Log.info("game.resumed", "game", game.gameId, "seed", game.seed, "players", game.playerIds);
+                }
+                replayed.clear();
+            }
+
+            return spaces;
+        }
+    }
+
+    private static int size(String... strings) {
+        int size = 0;
+        for (String string : strings) size += 2 + string.getBytes(StandardCharsets.UTF_8).length;
+        return size;
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
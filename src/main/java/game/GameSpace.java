@@ -0,0 +1,48 @@
+package game;
+
+import org.jspace.Space;
+import server.IndexedSpace;
+import server.MailboxSpace;
+
+/*
+The space a game is published under in the repository.
+
+Client to server commands (see the protocol in GameHandler) are not stored as tuples.
+They are posted to the mailbox of the GameHandler in the order they arrive, so they are
+handled one at a time without scanning the space or competing for a lock.
+The tuples for the players are kept in an IndexedSpace, so a player's get only looks at his own tuples.
+ */
+public class GameSpace extends MailboxSpace {
+
+    public GameSpace() {
+        this(new IndexedSpace());
+    }
+
+    public GameSpace(Space space) {
+        super(space);
+    }
+
+    // True if the tuple is one of the client to server commands
+    @Override
+    protected boolean isCommand(Object[] fields) {
+        if (fields.length < 2 || !(fields[0] instanceof String) || !(fields[1] instanceof String))
+            return false;
+
+        switch ((String) fields[1]) {
+            case "ready":
+                return fields.length == 2 || fields.length == 3;
+            case "turn":
+                return fields.length == 3 || fields.length == 4;
+            case "ended":
+            case "resync":
+            case "UNO":
+            case "missingUNO":
+                return fields.length == 2;
+            case "taken":
+            case "action":
+                return fields.length == 3;
+            default:
+                return false;
+        }
+    }
+}
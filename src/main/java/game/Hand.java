@@ -0,0 +1,81 @@
+package game;
+
+import java.util.Arrays;
+
+// The cards on a player's hand as a count per card id (see Card)
+// Besides the counts it keeps the number of cards per color and per value,
+// so checking whether the hand has any valid move is constant time
+class Hand {
+
+    private final int[] counts = new int[Card.IDS];  // The number of cards of each id
+    private final int[] colors = new int[Card.COLORS.length];  // The number of cards of each color
+    private final int[] values = new int[Card.VALUES.length];  // The number of cards of each value
+    private int size = 0;  // The total number of cards
+
+    void add(int card) {
+        counts[card]++;
+        colors[Card.colorOf(card)]++;
+        values[Card.valueOf(card)]++;
+        size++;
+    }
+
+    // Returns false if the card is not on the hand
+    boolean remove(int card) {
+        if (counts[card] == 0) return false;
+
+        counts[card]--;
+        colors[Card.colorOf(card)]--;
+        values[Card.valueOf(card)]--;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        if (size == 0) return;
+
+        Arrays.fill(counts, 0);
+        Arrays.fill(colors, 0);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    boolean contains(int card) {
+        return counts[card] > 0;
+    }
+
+    int count(int card) {
+        return counts[card];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Check if any card on the hand is a valid move on top of the given card
+    // Same rules as Engine.isMoveValid
+    boolean hasMoveOn(int topCard) {
+        if (size == 0) return false;
+
+        // If the top card is black, every move is valid
+        if (Card.colorOf(topCard) == Card.BLACK) return true;
+
+        // Black cards, a matching color or a matching value
+        return colors[Card.BLACK] > 0
+                || colors[Card.colorOf(topCard)] > 0
+                || values[Card.valueOf(topCard)] > 0;
+    }
+
+    // The cards on the hand for sending to the player, ordered by id
+    Card[] toCards() {
+        Card[] cards = new Card[size];
+
+        int i = 0;
+        for (int card = 0; card < counts.length; card++) {
+            for (int n = 0; n < counts[card]; n++) {
+                cards[i++] = Card.of(card);
+            }
+        }
+
+        return cards;
+    }
+}
@@ -0,0 +1,65 @@
+package game;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+
+// The JSON format the protocol has always used
+// A single Gson instance is shared by all games and warmed up when the class is loaded,
+// so the first game does not pay for Gson building its type adapters
+class JsonCodec implements WireCodec {
+
+    private static final Gson gson = new Gson();
+
+    static {
+        JsonCodec codec = new JsonCodec();
+        Card card = Card.of(0);
+        codec.decodeAction(codec.encodeAction(new Action(Actions.PLAY, card)));
+        codec.decodeBoard(codec.encodeBoard(new Board(0, card, new HashMap<>())));
+        codec.decodeDelta(codec.encodeDelta(new BoardDelta(0, card, new HashMap<>(), new Card[]{ card }, new Card[0])));
+        codec.decodeCards(codec.encodeCards(new Card[]{ card }));
+        codec.decodeHints(codec.encodeHints(new Hints(0, new Card[]{ card }, false)));
+    }
+
+    @Override
+    public String name() { return "json"; }
+
+    @Override
+    public int id() { return 0; }
+
+    @Override
+    public String encodeAction(Action action) { return gson.toJson(action); }
+
+    @Override
+    public Action decodeAction(String payload) { return gson.fromJson(payload, Action.class); }
+
+    @Override
+    public String encodeBoard(Board board) { return gson.toJson(board); }
+
+    @Override
+    public Board decodeBoard(String payload) { return gson.fromJson(payload, Board.class); }
+
+    @Override
+    public String encodeDelta(BoardDelta delta) { return gson.toJson(delta); }
+
+    @Override
+    public BoardDelta decodeDelta(String payload) { return gson.fromJson(payload, BoardDelta.class); }
+
+    @Override
+    public String encodeCard(Card card) { return gson.toJson(card); }
+
+    @Override
+    public Card decodeCard(String payload) { return gson.fromJson(payload, Card.class); }
+
+    @Override
+    public String encodeCards(Card[] cards) { return gson.toJson(cards); }
+
+    @Override
+    public Card[] decodeCards(String payload) { return gson.fromJson(payload, Card[].class); }
+
+    @Override
+    public String encodeHints(Hints hints) { return gson.toJson(hints); }
+
+    @Override
+    public Hints decodeHints(String payload) { return gson.fromJson(payload, Hints.class); }
+}
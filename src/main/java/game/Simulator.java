@@ -0,0 +1,171 @@
+package game;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *  Plays seeded bot against bot games on the Engine alone, no spaces, threads per player or messages,
+ *  to see what the rules do over millions of games, e.g. to balance a rule variant or to check that an
+ *  engine change doesn't change the results.
+ *
+ *  The games are split over the cores with fork join: a task with more than BATCH games splits its seeds in two,
+ *  smaller ones play their games one after the other and the results are added up on the way back.
+ *  Game n is dealt from seed + n, so a run gives the same results however many cores play it.
+ *  Every bot plays the lowest card id it can and otherwise draws, like Bot, so a seed gives the winner
+ *  a GameHandler game with Bots gets from it. A game still going after
+ *  --maxTurns turns is counted as unfinished.
+ *
+ *  Options (with their defaults): --games 1000000 --players 4 --seed 0 --maxTurns 10000 --threads <cores>
+ *  e.g. java -cp target/classes game.Simulator --games 5000000 --players 5
+ */
+public class Simulator {
+
+    static final int BATCH = 4096;  // The most games a task plays itself instead of splitting
+
+    // The results of a number of games
+    static class Results {
+        long games = 0;
+        long unfinished = 0;  // Games without a winner after maxTurns
+        long turns = 0;  // Turns of the finished games
+        long draws = 0;  // Cards drawn instead of played
+        long penalties = 0;  // Cards given for Draw cards
+        long[] wins;  // By seat, seat 0 starts
+
+        Results(int players) {
+            wins = new long[players];
+        }
+
+        void add(Results other) {
+            games += other.games;
+            unfinished += other.unfinished;
+            turns += other.turns;
+            draws += other.draws;
+            penalties += other.penalties;
+            for (int i = 0; i < wins.length; i++) wins[i] += other.wins[i];
+        }
+
+        Map<String, Object> toMap() {
+            long finished = games - unfinished;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("games", games);
+            map.put("unfinished", unfinished);
+            map.put("turnsPerGame", finished == 0 ? 0 : (double) turns / finished);
+            map.put("drawsPerGame", games == 0 ? 0 : (double) draws / games);
+            map.put("penaltyCardsPerGame", games == 0 ? 0 : (double) penalties / games);
+
+            double[] share = new double[wins.length];
+            for (int i = 0; i < wins.length; i++) share[i] = finished == 0 ? 0 : (double) wins[i] / finished;
+            map.put("winShareBySeat", Arrays.toString(share));
+            return map;
+        }
+    }
+
+    // The games from seed to seed + games
+    static class Games extends RecursiveTask<Results> {
+        private static final long serialVersionUID = 1L;
+
+        final long seed;
+        final long games;
+        final int players;
+        final int maxTurns;
+
+        Games(long seed, long games, int players, int maxTurns) {
+            this.seed = seed;
+            this.games = games;
+            this.players = players;
+            this.maxTurns = maxTurns;
+        }
+
+        @Override
+        protected Results compute() {
+            if (games <= BATCH) {
+                Results results = new Results(players);
+                for (long n = 0; n < games; n++) play(seed + n, players, maxTurns, results);
+                return results;
+            }
+
+            long half = games / 2;
+            Games first = new Games(seed, half, players, maxTurns);
+            Games second = new Games(seed + half, games - half, players, maxTurns);
+            first.fork();
+
+            Results results = second.compute();
+            results.add(first.join());
+            return results;
+        }
+    }
+
+    // Play one game and add it to the results
+    static void play(long seed, int players, int maxTurns, Results results) {
+        Engine engine = new Engine(players, seed);
+        engine.start();
+        results.games++;
+
+        for (int turn = 1; turn <= maxTurns; turn++) {
+            int player = engine.currentPlayer;
+
+            // Like Bot, the card is picked before the penalty of taking the turn, which only adds cards
+            int card = engine.playableCard(player);
+            results.penalties += engine.applyPenalty();
+            if (card < 0) card = engine.playableCard(player);
+
+            if (card >= 0) {
+                engine.play(player, card);
+            } else {
+                engine.draw(player);
+                results.draws++;
+            }
+
+            int winner = engine.winner();
+            if (winner >= 0) {
+                results.wins[winner]++;
+                results.turns += turn;
+                return;
+            }
+
+            engine.advance();
+        }
+
+        results.unfinished++;
+    }
+
+    static Results run(long games, int players, long seed, int maxTurns, ForkJoinPool pool) {
+        return pool.invoke(new Games(seed, games, players, maxTurns));
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("games", "1000000");
+        options.put("players", "4");
+        options.put("seed", "0");
+        options.put("maxTurns", "10000");
+        options.put("threads", "" + Runtime.getRuntime().availableProcessors());
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--") || !options.containsKey(args[i].substring(2)))
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        long games = Long.parseLong(options.get("games"));
+        int players = Integer.parseInt(options.get("players"));
+        if (players < 2) throw new IllegalArgumentException("A game needs at least 2 players");
+
+        ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(options.get("threads")));
+        long start = System.nanoTime();
+        Results results = run(games, players, Long.parseLong(options.get("seed")), Integer.parseInt(options.get("maxTurns")), pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        Map<String, Object> report = new LinkedHashMap<>(options);
+        report.putAll(results.toMap());
+        report.put("seconds", seconds);
+        report.put("gamesPerSecond", games / seconds);
+
+        for (Map.Entry<String, Object> entry : report.entrySet())
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+    }
+}
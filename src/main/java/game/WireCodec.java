@@ -0,0 +1,58 @@
+package game;
+
+// Turns the payloads of the game protocol into the strings carried in the tuples and back
+// Every player picks a codec when reporting ready, JSON is used until then (see GameHandler)
+interface WireCodec {
+
+    JsonCodec JSON = new JsonCodec();
+    BinaryCodec BINARY = new BinaryCodec();
+
+    // All codecs, a codec's index in this array is its id()
+    WireCodec[] CODECS = { JSON, BINARY };
+
+    // The name a client uses to select the codec
+    String name();
+
+    // The index of the codec in CODECS
+    int id();
+
+    String encodeAction(Action action);
+    Action decodeAction(String payload);
+
+    // The action in a payload from a client, null if it isn't a valid one (the decode failed, no action,
+    // or a played card that doesn't exist), so a broken or hostile client can't make the game throw
+    default Action readAction(String payload) {
+        if (payload == null) return null;
+
+        try {
+            Action action = decodeAction(payload);
+            if (action == null || action.getAction() == null) return null;
+            if (action.getAction() == Actions.PLAY && Card.idOf(action.getCard()) < 0) return null;
+            return action;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    String encodeBoard(Board board);
+    Board decodeBoard(String payload);
+
+    String encodeDelta(BoardDelta delta);
+    BoardDelta decodeDelta(String payload);
+
+    String encodeCard(Card card);
+    Card decodeCard(String payload);
+
+    String encodeCards(Card[] cards);
+    Card[] decodeCards(String payload);
+
+    String encodeHints(Hints hints);
+    Hints decodeHints(String payload);
+
+    // The codec with the given name, null if there is none
+    static WireCodec named(String name) {
+        for (WireCodec codec : CODECS)
+            if (codec.name().equals(name)) return codec;
+        return null;
+    }
+}
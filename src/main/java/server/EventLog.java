@@ -0,0 +1,293 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ *  An append-only log of small binary records, so a server that dies can build its games back (see game.GameLog).
+ *  The log is a directory of segment files, each named after the position of its first byte, and every segment is
+ *  memory mapped: appending a record is copying it into the mapping, no system call. A record is
+ *  [length][CRC32C of the record][record], a length of 0 (the file is zeroed) or no room for a header ends a segment.
+ *
+ *  Once append returns, the record is in the page cache and survives the process dying. Surviving the machine going
+ *  down needs the pages written to the disk (force), which a single committer thread does for everything appended
+ *  since its last round (group commit): every kameluno.eventLogCommit milliseconds (default 5), or right away
+ *  if someone waits for a record in awaitDurable. So one disk write covers all the records of all the games in a round.
+ *
+ *  Whole segments are deleted once everything in them is released (see release), they are never rewritten.
+ *  Opening the log replays the records it has, a torn record at the end (the process died while copying it)
+ *  is where the log goes on from. close stops the committer after a last round, nothing is appended after it.
+ *  Metrics: eventLog.records and eventLog.bytes (counts), eventLog.commit (one round of the committer)
+ */
+public class EventLog {
+
+    private static final LongAdder RECORDS = Metrics.counter("eventLog.records");
+    private static final LongAdder BYTES = Metrics.counter("eventLog.bytes");
+    private static final Histogram COMMIT = Metrics.histogram("eventLog.commit");
+
+    // Gets the records of the log when it is opened
+    public interface Replay {
+        void record(long position, ByteBuffer record);
+    }
+
+    private static final int HEADER = 8;  // The length and the checksum
+    private static final String SUFFIX = ".log";
+
+    private final Path dir;
+    private final int segmentSize;  // Of the new segments, in bytes
+    private final long commitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition committed = lock.newCondition();  // Signalled after every round of the committer
+    private final Condition waiting = lock.newCondition();  // Signalled when someone waits for a commit
+
+    // Guarded by lock
+    private final TreeMap<Long, Path> segments = new TreeMap<>();  // By the position of their first byte
+    private MappedByteBuffer segment;  // The one appended to
+    private long base;  // The position of its first byte
+    private final List<MappedByteBuffer> full = new ArrayList<>();  // Filled segments the committer has to force
+    private final CRC32C checksum = new CRC32C();
+    private long durable;  // Everything before this position is on the disk
+    private long released = 0;  // Everything before this position can be deleted
+    private int waiters = 0;
+    private boolean closing = false;
+    private Thread committer;
+
+    private EventLog(Path dir, int segmentSize, long commitNanos) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.commitNanos = commitNanos;
+    }
+
+    // The log in the directory of kameluno.eventLog, with kameluno.eventLogSegment megabyte segments (default 64)
+    // Returns null if the property isn't set, there is no log then
+    public static EventLog fromProperties(Replay replay) throws IOException {
+        String dir = System.getProperty("kameluno.eventLog");
+        if (dir == null) return null;
+
+        return open(Path.of(dir),
+                Integer.getInteger("kameluno.eventLogSegment", 64) << 20,
+                Long.getLong("kameluno.eventLogCommit", 5), TimeUnit.MILLISECONDS,
+                replay);
+    }
+
+    // Open the log in the directory (created if needed), hand every record in it to replay and go on after the last one
+    // The records are read only buffers valid during the call
+    public static EventLog open(Path dir, int segmentSize, long commit, TimeUnit unit, Replay replay) throws IOException {
+        Files.createDirectories(dir);
+        EventLog log = new EventLog(dir, segmentSize, unit.toNanos(commit));
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(file -> log.segments.put(positionOf(file), file));
+        }
+
+        long position = 0;
+        for (Path file : log.segments.values()) {
+            boolean last = file.equals(log.segments.lastEntry().getValue());
+            MappedByteBuffer buffer = map(file, Files.size(file));
+            int end = read(buffer, positionOf(file), replay);
+
+            if (last) {
+                // What follows may be a torn record, the records are appended in order so nothing is after it.
+                // Zero it so it isn't read as one behind the new records
+                int torn = buffer.capacity() - end < HEADER ? buffer.capacity() - end
+                        : HEADER + Math.max(0, Math.min(buffer.getInt(end), buffer.capacity() - end - HEADER));
+                buffer.put(end, new byte[torn]);
+                buffer.position(end);
+                log.segment = buffer;
+                log.base = positionOf(file);
+            }
+            position = positionOf(file) + end;
+        }
+
+        if (log.segment == null) log.roll(position);
+        log.durable = position;
+
+        log.committer = new Thread(log::commit, "kameluno-eventLog");
+        log.committer.setDaemon(true);
+        log.committer.start();
+
+        Log.info("eventLog.opened", "dir", dir, "segments", log.segments.size(), "position", position);
+        return log;
+    }
+
+    // Read the records of a segment from the start, returns where the valid records end
+    private static int read(ByteBuffer buffer, long base, Replay replay) {
+        CRC32C checksum = new CRC32C();
+        int position = 0;
+
+        while (buffer.capacity() - position >= HEADER) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.capacity() - position - HEADER) break;
+
+            ByteBuffer record = buffer.slice(position + HEADER, length).asReadOnlyBuffer();
+            checksum.reset();
+            checksum.update(record.duplicate());
+            if ((int) checksum.getValue() != buffer.getInt(position + 4)) break;
+
+            replay.record(base + position, record);
+            position += HEADER + length;
+        }
+
+        return position;
+    }
+
+    // Append the record (its remaining bytes) and return its position
+    public long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (length == 0 || HEADER + length > segmentSize) throw new IllegalArgumentException("Record of " + length + " bytes");
+
+        lock.lock();
+        try {
+            if (segment.remaining() < HEADER + length) roll(base + segment.position());
+
+            long position = base + segment.position();
+            checksum.reset();
+            checksum.update(record.duplicate());
+            segment.putInt(length).putInt((int) checksum.getValue()).put(record);
+
+            RECORDS.increment();
+            BYTES.add(HEADER + length);
+            return position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The position the next record is appended at
+    public long position() {
+        lock.lock();
+        try {
+            return base + segment.position();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Wait until the record at the position is on the disk
+    public void awaitDurable(long position) throws InterruptedException {
+        lock.lock();
+        try {
+            waiters++;
+            waiting.signal();
+            while (durable <= position) committed.await();
+        } finally {
+            waiters--;
+            lock.unlock();
+        }
+    }
+
+    // The records before the position are not needed anymore, the segments that only have such records are deleted
+    public void release(long position) {
+        lock.lock();
+        try {
+            released = Math.max(released, position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Force everything appended to the disk and stop the committer
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closing = true;
+            waiting.signal();
+        } finally {
+            lock.unlock();
+        }
+        committer.join();
+    }
+
+    // Start a new segment at the position, the rest of the current one stays zeros
+    private void roll(long position) throws IOException {
+        if (segment != null) full.add(segment);
+
+        Path file = dir.resolve(String.format("%020d%s", position, SUFFIX));
+        segment = map(file, segmentSize);
+        base = position;
+        segments.put(position, file);
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static long positionOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    // The committer: force what was appended since the last round, then delete the released segments
+    // After close it does one more round and stops
+    private void commit() {
+        boolean last = false;
+        while (!last) {
+            List<MappedByteBuffer> filled;
+            MappedByteBuffer current;
+            long from, to, currentBase;
+            List<Path> deleted = new ArrayList<>();
+
+            lock.lock();
+            try {
+                // Nobody waits or there is nothing new to commit for them
+                if (!closing && (waiters == 0 || (full.isEmpty() && base + segment.position() == durable)))
+                    waiting.awaitNanos(commitNanos);
+                last = closing;
+
+                filled = new ArrayList<>(full);
+                full.clear();
+                current = segment;
+                currentBase = base;
+                from = Math.max(durable, base);
+                to = base + segment.position();
+
+                // Every segment that ends before the released position, never the current one
+                while (segments.size() > 1) {
+                    Long first = segments.firstKey();
+                    if (segments.higherKey(first) > released) break;
+                    deleted.add(segments.remove(first));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            try {
+                for (MappedByteBuffer buffer : filled) buffer.force();
+                if (to > from) current.force((int) (from - currentBase), (int) (to - from));
+                for (Path file : deleted) Files.deleteIfExists(file);
+            } catch (IOException | RuntimeException e) {
+                Log.error("eventLog.commitFailed", "dir", dir, "error", e);
+            }
+            if (to > from || !filled.isEmpty()) COMMIT.time(start);
+
+            lock.lock();
+            try {
+                durable = Math.max(durable, to);
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ *  Java Flight Recorder events for the phases of lobbies and games. They cost next to nothing until a recording
+ *  is running, e.g. a continuous one started with
+ *    java -XX:StartFlightRecording=settings=default,disk=true,maxage=1h ...
+ *  and they show up under KamelUno in JDK Mission Control, or with jfr print --events 'kameluno.*' recording.jfr
+ *
+ *  Every event has its duration, the game (or lobby) and the player it belongs to, and the length of the payload
+ *  handled, so a slow turn can be traced to one game and one phase.
+ *  Fill in the fields only if shouldCommit() is true, so nothing is done while no recording wants the event:
+ *    if (event.shouldCommit()) { event.tuples = tuples; event.commit(gameId, playerId, payload.length()); }
+ */
+public class Events {
+
+    @Category({ "KamelUno" })
+    public abstract static class KamelUnoEvent extends Event {
+        @Label("Game")
+        @Description("The game, or lobby, the event belongs to")
+        public String gameId;
+
+        @Label("Player")
+        public String playerId;
+
+        @Label("Payload Characters")
+        @Description("The length of the payloads read or written, in characters")
+        public long payloadChars;
+
+        // Fill in the common fields and commit, only call it when shouldCommit() is true
+        public void commit(String gameId, String playerId, long payloadChars) {
+            this.gameId = gameId;
+            this.playerId = playerId;
+            this.payloadChars = payloadChars;
+            commit();
+        }
+    }
+
+    @Name("kameluno.Turn")
+    @Label("Turn Taken")
+    @Description("A player takes his turn, including the penalty cards")
+    public static class Turn extends KamelUnoEvent {}
+
+    @Name("kameluno.Action")
+    @Label("Action")
+    @Description("A player's action from decoding it until the answer")
+    public static class Action extends KamelUnoEvent {}
+
+    @Name("kameluno.PlayCard")
+    @Label("Play Card")
+    public static class PlayCard extends KamelUnoEvent {}
+
+    @Name("kameluno.DrawCard")
+    @Label("Draw Card")
+    public static class DrawCard extends KamelUnoEvent {}
+
+    @Name("kameluno.Broadcast")
+    @Label("Broadcast")
+    @Description("Sending a board update to every player of a game")
+    public static class Broadcast extends KamelUnoEvent {
+        @Label("Tuples")
+        public int tuples;
+    }
+
+    @Name("kameluno.Uno")
+    @Label("UNO")
+    @Description("A player calls UNO, or missing UNO on the previous player")
+    public static class Uno extends KamelUnoEvent {
+        @Label("Missing UNO")
+        public boolean missing;
+    }
+
+    @Name("kameluno.Lobby")
+    @Label("Lobby Request")
+    @Description("Creating or joining a lobby")
+    public static class Lobby extends KamelUnoEvent {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Accepted")
+        public boolean accepted;
+    }
+}
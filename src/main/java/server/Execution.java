@@ -0,0 +1,77 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  The threads lobbies and games run on, shared by all of them.
+ *  The model is picked with the system property kameluno.threads:
+ *  * pool (default): a fixed pool with one thread per core (or kameluno.poolSize threads)
+ *  * virtual: a virtual thread per task. Needs a JVM with virtual threads, otherwise the pool is used
+ *  * thread: a new platform thread per task, mostly for debugging
+ *  Lobbies and games never block a thread while waiting for their players, they are Mailbox handlers
+ *  that only run when a message arrives, so the number of threads stays the same however many games run.
+ */
+public class Execution {
+
+    private static final ExecutorService executor = create(System.getProperty("kameluno.threads", "pool"));
+
+    // For delayed events, it only hands them over to the executor
+    private static final TimingWheel timer = new TimingWheel(Long.getLong("kameluno.tick", 10), TimeUnit.MILLISECONDS, executor, "kameluno-timer");
+
+    public static ExecutorService executor() {
+        return executor;
+    }
+
+    // Run a task on the executor after a delay, see TimingWheel. The delay is rounded up to kameluno.tick milliseconds
+    public static TimingWheel.Timeout schedule(long delay, TimeUnit unit, Runnable task) {
+        return timer.schedule(delay, unit, task);
+    }
+
+    // The delayed tasks that are waiting
+    public static int scheduled() {
+        return timer.pending();
+    }
+
+    private static ExecutorService create(String model) {
+        switch (model) {
+            case "virtual":
+                ExecutorService virtual = virtualThreads();
+                if (virtual != null) return virtual;
+                Log.warn("execution.noVirtualThreads", "using", "pool");
+                return pool();
+            case "thread":
+                return Executors.newCachedThreadPool(threads("worker", false));
+            default:
+                return pool();
+        }
+    }
+
+    private static ExecutorService pool() {
+        int size = Integer.getInteger("kameluno.poolSize", Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(size, threads("worker", false));
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() if the JVM has it
+    private static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory threads(String name, boolean daemon) {
+        AtomicInteger count = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "kameluno-" + name + "-" + count.getAndIncrement());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  A latency histogram in the style of HdrHistogram, for values in nanoseconds.
+ *  The values are counted in log-linear buckets: every power of two is split into 16 equal sub buckets,
+ *  so a value is known to within 1/16 (about 6%) whatever its size, with a fixed 960 buckets.
+ *  Recording is one atomic increment and never allocates, so it can be used on the hot paths.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0);
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    // Record the time since start, a System.nanoTime
+    public void time(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts.get(i);
+        return count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : sum.sum() / (double) count;
+    }
+
+    // The value below which the fraction p of the recorded values are, e.g. 0.99
+    // Given as the highest value of its bucket, like HdrHistogram does
+    public long percentile(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highest(i), max.get());
+        }
+
+        return max.get();
+    }
+
+    // Values below 16 have a bucket each, above that the bucket is the position of the highest bit and the next 4 bits
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // The lowest value counted in a bucket
+    static long lowest(int index) {
+        if (index < SUB_BUCKETS) return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    // The highest value counted in a bucket
+    static long highest(int index) {
+        if (index == BUCKETS - 1) return Long.MAX_VALUE;
+        return lowest(index + 1) - 1;
+    }
+}
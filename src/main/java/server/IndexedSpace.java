@@ -0,0 +1,403 @@
+package server;
+
+import org.jspace.ActualField;
+import org.jspace.Space;
+import org.jspace.TemplateField;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  A Space for the (playerId, command, payload) protocol, a drop in for SequentialSpace.
+ *  Tuples are kept in buckets by their size, first field and second field, e.g. all ("Mark", "board", _)
+ *  tuples are one bucket. A template that starts with two ActualFields, the usual (playerId, command, ...)
+ *  get, only looks at its own bucket, with only its first field actual it looks at the buckets of that player,
+ *  and only a template starting with a FormalField looks at every tuple of its size.
+ *
+ *  A blocked get or query waits on its own condition and a put only wakes the waiters its tuple matches,
+ *  instead of every waiter of the space rescanning it.
+ *  Like SequentialSpace, the oldest matching tuple is the one returned.
+ *
+ *  putLatest is for channels where only the newest tuple matters, like a player's board snapshots:
+ *  it replaces the unread tuples with the same size and first two fields, so a slow reader
+ *  never has more than one waiting and skips straight to the current one.
+ *
+ *  broadcast puts the same tuple for many recipients, e.g. (player, "takes", id) for every player of a game.
+ *  The tuple is stored once, each recipient's bucket only gets a small entry pointing to it with the recipient
+ *  as first field, and it all happens under one lock. A recipient's get sees it like any other tuple.
+ */
+public class IndexedSpace implements Space {
+
+    private static final Object NONE = new Object();  // The key of a field the tuple doesn't have
+    private static final Object ANY = new Object();  // The key of a template field that is not an ActualField
+
+    // A tuple and when it was put, to find the oldest match across buckets
+    // The fields can be shared by the recipients of a broadcast, then the first field is the recipient instead
+    private static class Stored {
+        final long seq;
+        final Object first;
+        final Object[] fields;
+
+        Stored(long seq, Object first, Object[] fields) {
+            this.seq = seq;
+            this.first = first;
+            this.fields = fields;
+        }
+
+        Object field(int i) {
+            return i == 0 ? first : fields[i];
+        }
+
+        // The tuple as the reader gets it, only a broadcast one is copied
+        Object[] tuple() {
+            if (fields.length == 0 || fields[0] == first) return fields;
+
+            Object[] tuple = fields.clone();
+            tuple[0] = first;
+            return tuple;
+        }
+    }
+
+    // A blocked get or query
+    private static class Waiter {
+        final TemplateField[] template;
+        final Condition ready;
+
+        Waiter(TemplateField[] template, Condition ready) {
+            this.template = template;
+            this.ready = ready;
+        }
+    }
+
+    // The tuples of one size and first field, by second field, and the waiters for them
+    private static class Group {
+        final Map<Object, ArrayDeque<Stored>> buckets = new HashMap<>();
+        final List<Waiter> waiters = new ArrayList<>(2);
+
+        boolean isEmpty() {
+            return buckets.isEmpty() && waiters.isEmpty();
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Map<Object, Group>> groups = new HashMap<>();  // By size, then first field
+    private final Map<Integer, List<Waiter>> anyFirst = new HashMap<>();  // By size, the waiters with a formal first field
+    private long seq = 0;
+    private int size = 0;
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean put(Object... fields) throws InterruptedException {
+        lock.lock();
+        try {
+            store(new Stored(seq++, field(fields, 0), fields));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Put (recipient, fields...) for every recipient, with the fields stored only once
+    public boolean broadcast(Object[] recipients, Object... fields) throws InterruptedException {
+        Object[] shared = new Object[fields.length + 1];
+        System.arraycopy(fields, 0, shared, 1, fields.length);
+
+        lock.lock();
+        try {
+            long broadcastSeq = seq++;
+            for (Object recipient : recipients) store(new Stored(broadcastSeq, recipient, shared));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Add the tuple to its bucket and wake the waiters it matches. Call with the lock held
+    private void store(Stored stored) {
+        int length = stored.fields.length;
+        Group group = group(length, stored.first, true);
+        group.buckets.computeIfAbsent(field(stored.fields, 1), key -> new ArrayDeque<>()).add(stored);
+        size++;
+
+        signal(group.waiters, stored);
+        List<Waiter> waiters = anyFirst.get(length);
+        if (waiters != null) signal(waiters, stored);
+    }
+
+    // Put the tuple in place of the stored tuples with the same size and first two fields
+    public boolean putLatest(Object... fields) throws InterruptedException {
+        lock.lock();
+        try {
+            Group group = group(fields.length, field(fields, 0), false);
+            ArrayDeque<Stored> bucket = group == null ? null : group.buckets.get(field(fields, 1));
+
+            if (bucket != null) {
+                size -= bucket.size();
+                bucket.clear();
+            }
+
+            return put(fields);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] get(TemplateField... template) throws InterruptedException {
+        return await(template, true);
+    }
+
+    @Override
+    public Object[] getp(TemplateField... template) throws InterruptedException {
+        lock.lock();
+        try {
+            return find(template, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Object[]> getAll(TemplateField... template) throws InterruptedException {
+        return all(template, true);
+    }
+
+    @Override
+    public Object[] query(TemplateField... template) throws InterruptedException {
+        return await(template, false);
+    }
+
+    @Override
+    public Object[] queryp(TemplateField... template) throws InterruptedException {
+        lock.lock();
+        try {
+            return find(template, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Object[]> queryAll(TemplateField... template) throws InterruptedException {
+        return all(template, false);
+    }
+
+    // Wait until a tuple matches the template
+    private Object[] await(TemplateField[] template, boolean remove) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Object[] found = find(template, remove);
+            if (found != null) return found;
+
+            Waiter waiter = new Waiter(template, lock.newCondition());
+            Object first = key(template, 0);
+            List<Waiter> waiters = first == ANY
+                    ? anyFirst.computeIfAbsent(template.length, length -> new ArrayList<>(1))
+                    : group(template.length, first, true).waiters;
+            waiters.add(waiter);
+
+            try {
+                while ((found = find(template, remove)) == null) waiter.ready.await();
+                return found;
+            } finally {
+                waiters.remove(waiter);
+                if (first == ANY) {
+                    if (waiters.isEmpty()) anyFirst.remove(template.length);
+                } else {
+                    cleanUp(template.length, first);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The oldest tuple that matches the template, null if there is none. Call with the lock held
+    private Object[] find(TemplateField[] template, boolean remove) {
+        Map<Object, Group> byFirst = groups.get(template.length);
+        if (byFirst == null) return null;
+
+        Object first = key(template, 0);
+        Object second = key(template, 1);
+
+        Stored oldest = null;
+        Object oldestFirst = null;
+        Object oldestSecond = null;
+
+        if (first != ANY) {
+            Group group = byFirst.get(first);
+            if (group == null) return null;
+
+            if (second != ANY) {
+                oldest = oldest(group.buckets.get(second), template);
+                oldestSecond = second;
+            } else {
+                for (Map.Entry<Object, ArrayDeque<Stored>> bucket : group.buckets.entrySet()) {
+                    Stored stored = oldest(bucket.getValue(), template);
+                    if (stored != null && (oldest == null || stored.seq < oldest.seq)) {
+                        oldest = stored;
+                        oldestSecond = bucket.getKey();
+                    }
+                }
+            }
+            oldestFirst = first;
+        } else {
+            for (Map.Entry<Object, Group> group : byFirst.entrySet()) {
+                for (Map.Entry<Object, ArrayDeque<Stored>> bucket : group.getValue().buckets.entrySet()) {
+                    if (second != ANY && !second.equals(bucket.getKey())) continue;
+
+                    Stored stored = oldest(bucket.getValue(), template);
+                    if (stored != null && (oldest == null || stored.seq < oldest.seq)) {
+                        oldest = stored;
+                        oldestFirst = group.getKey();
+                        oldestSecond = bucket.getKey();
+                    }
+                }
+            }
+        }
+
+        if (oldest == null) return null;
+        if (remove) remove(template.length, oldestFirst, oldestSecond, oldest);
+        return oldest.tuple();
+    }
+
+    // Every tuple that matches the template, oldest first
+    private List<Object[]> all(TemplateField[] template, boolean remove) {
+        lock.lock();
+        try {
+            List<Stored> matches = new ArrayList<>();
+            Map<Object, Group> byFirst = groups.get(template.length);
+
+            if (byFirst != null) {
+                Object first = key(template, 0);
+                Object second = key(template, 1);
+
+                List<Object> firsts = new ArrayList<>(first == ANY ? byFirst.keySet() : List.of(first));
+                for (Object f : firsts) {
+                    Group group = byFirst.get(f);
+                    if (group == null) continue;
+
+                    List<Object> seconds = new ArrayList<>(second == ANY ? group.buckets.keySet() : List.of(second));
+                    for (Object s : seconds) {
+                        ArrayDeque<Stored> bucket = group.buckets.get(s);
+                        if (bucket == null) continue;
+
+                        Iterator<Stored> tuples = bucket.iterator();
+                        while (tuples.hasNext()) {
+                            Stored stored = tuples.next();
+                            if (!matches(template, stored)) continue;
+
+                            matches.add(stored);
+                            if (remove) {
+                                tuples.remove();
+                                size--;
+                            }
+                        }
+
+                        if (bucket.isEmpty()) group.buckets.remove(s);
+                    }
+
+                    cleanUp(template.length, f);
+                }
+            }
+
+            matches.sort((a, b) -> Long.compare(a.seq, b.seq));
+
+            List<Object[]> result = new LinkedList<>();
+            for (Stored stored : matches) result.add(stored.tuple());
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Stored oldest(ArrayDeque<Stored> bucket, TemplateField[] template) {
+        if (bucket == null) return null;
+
+        for (Stored stored : bucket)
+            if (matches(template, stored)) return stored;
+
+        return null;
+    }
+
+    private void remove(int length, Object first, Object second, Stored stored) {
+        Group group = groups.get(length).get(first);
+        ArrayDeque<Stored> bucket = group.buckets.get(second);
+
+        // Almost always the head of the bucket
+        if (bucket.peekFirst() == stored) bucket.pollFirst();
+        else bucket.removeFirstOccurrence(stored);
+
+        size--;
+        if (bucket.isEmpty()) group.buckets.remove(second);
+        cleanUp(length, first);
+    }
+
+    // Drop a group without tuples or waiters, so one-off keys like request ids don't pile up
+    private void cleanUp(int length, Object first) {
+        Map<Object, Group> byFirst = groups.get(length);
+        if (byFirst == null) return;
+
+        Group group = byFirst.get(first);
+        if (group != null && group.isEmpty()) byFirst.remove(first);
+        if (byFirst.isEmpty()) groups.remove(length);
+    }
+
+    private Group group(int length, Object first, boolean create) {
+        Map<Object, Group> byFirst = groups.get(length);
+        if (byFirst == null) {
+            if (!create) return null;
+            byFirst = new HashMap<>();
+            groups.put(length, byFirst);
+        }
+
+        Group group = byFirst.get(first);
+        if (group == null && create) {
+            group = new Group();
+            byFirst.put(first, group);
+        }
+        return group;
+    }
+
+    private static void signal(List<Waiter> waiters, Stored stored) {
+        for (Waiter waiter : waiters)
+            if (matches(waiter.template, stored)) waiter.ready.signal();
+    }
+
+    private static boolean matches(TemplateField[] template, Stored stored) {
+        if (template.length != stored.fields.length) return false;
+
+        for (int i = 0; i < template.length; i++)
+            if (!template[i].match(stored.field(i))) return false;
+
+        return true;
+    }
+
+    // The bucket key of a tuple field
+    private static Object field(Object[] fields, int i) {
+        return i < fields.length ? fields[i] : NONE;
+    }
+
+    // The bucket key of a template field, ANY if it can match more than one key
+    private static Object key(TemplateField[] template, int i) {
+        if (i >= template.length) return NONE;
+        if (template[i] instanceof ActualField) return ((ActualField) template[i]).getValue();
+        return ANY;
+    }
+}
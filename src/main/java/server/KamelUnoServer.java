@@ -0,0 +1,70 @@
+package server;
+
+import chat.LobbyManager;
+import chat.RequestDispatcher;
+import org.jspace.SpaceRepository;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ *  The whole server: the request space, the lobbies and their games, published through one gate.
+ *  Main starts it on the public gate, a load test can start it on a loopback gate in its own JVM.
+ *  With kameluno.eventLog set to a directory, the games are logged there and resumed when the server starts again.
+ */
+public class KamelUnoServer {
+
+    public static final int PORT = 9001;
+
+    private final String gate;
+    private final SpaceRepository repository = new SpaceRepository();
+    private final IndexedSpace requestSpace = new IndexedSpace();  // Responses are found by their request id
+    private final LobbyManager lobbyManager;
+
+    // gate is a jSpace gate URI, e.g. tcp://127.0.0.1:9001/?keep
+    public KamelUnoServer(String gate) {
+        this.gate = gate;
+        repository.add("requestSpace", requestSpace);
+        lobbyManager = new LobbyManager(repository);
+
+        // Gauges for watching the capacity over JMX, see Metrics
+        Lifecycle lifecycle = lobbyManager.getLifecycle();
+        Metrics.gauge("lobbies.live", lifecycle::liveLobbies);
+        Metrics.gauge("games.live", lifecycle::liveGames);
+        Metrics.gauge("lobbies.reaped", lifecycle::reapedLobbies);
+        Metrics.gauge("games.reaped", lifecycle::reapedGames);
+        Metrics.gauge("commands.pending", lifecycle::pendingCommands);
+        Metrics.gauge("timers.pending", Execution::scheduled);
+        Metrics.gauge("tuples", () -> requestSpace.size() + lifecycle.tuples());
+        Metrics.gauge("threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    // Open the gate and serve the client requests on a thread of their own (see RequestDispatcher)
+    public void start() {
+        Log.info("server.starting", "gate", gate);
+
+        // The games the event log has from before a restart, see game.GameLog
+        try {
+            lobbyManager.resumeGames();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        repository.addGate(gate);
+
+        RequestDispatcher dispatcher = new RequestDispatcher(requestSpace, lobbyManager);
+        new Thread(dispatcher::run, "kameluno-dispatcher").start();
+    }
+
+    // Stop accepting connections
+    public void stop() {
+        repository.closeGates();
+    }
+
+    public SpaceRepository getRepository() {
+        return repository;
+    }
+
+    public LobbyManager getLobbyManager() {
+        return lobbyManager;
+    }
+}
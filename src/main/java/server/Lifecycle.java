@@ -0,0 +1,213 @@
+package server;
+
+import org.jspace.SpaceRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  Keeps track of the lobbies and games published in the repository and reclaims them once they are no longer used.
+ *  A lobby or game goes through these states:
+ *  * LIVE: published and handling commands
+ *  * FINISHED: a game whose winner is found. Its space is kept for a grace period, so the players can read the result
+ *  * REAPED: removed from the repository, its mailbox closed and its tuples left to the garbage collector
+ *  A game is reaped once it has been finished for the grace period, or when no command arrived for the idle timeout.
+ *  A lobby is reaped when no command arrived for the idle timeout and its game (if any) is reaped.
+ *
+ *  Instead of looking at every entry every few seconds, each entry has a timer on Execution's timing wheel
+ *  for when it could be reaped next: its idle timeout, or the end of the grace period once a game is closed.
+ *  When the timer fires and a command arrived since, it is set again from the last command.
+ *  A lobby still waiting for its game is looked at again when the game is reaped.
+ *
+ *  The timeouts are set with the system properties kameluno.idleTimeout (seconds, default 1800)
+ *  and kameluno.finishedGrace (seconds, default 60).
+ */
+public class Lifecycle {
+
+    public enum Kind { LOBBY, GAME }
+
+    public enum State { LIVE, FINISHED, REAPED }
+
+    // A lobby or game that is tracked
+    public static class Entry {
+        final Kind kind;
+        final String id;
+        final MailboxSpace space;
+        final Runnable onReap;  // Extra clean up, e.g. removing the lobby from the listing
+        volatile State state = State.LIVE;
+        volatile TimingWheel.Timeout timer;  // When it is looked at next, null without timers
+
+        Entry(Kind kind, String id, MailboxSpace space, Runnable onReap) {
+            this.kind = kind;
+            this.id = id;
+            this.space = space;
+            this.onReap = onReap;
+        }
+
+        // The name the space is published under in the repository
+        public String name() {
+            return (kind == Kind.LOBBY ? "lobby" : "game") + id;
+        }
+
+        public State state() {
+            return state;
+        }
+    }
+
+    private final SpaceRepository repository;
+    private final long idleTimeout;  // Nanoseconds
+    private final long finishedGrace;  // Nanoseconds
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();  // By name
+    private boolean timers = false;  // True to reap with timers, otherwise reap() has to be called
+
+    private final AtomicLong reapedLobbies = new AtomicLong(0);
+    private final AtomicLong reapedGames = new AtomicLong(0);
+
+    public Lifecycle(SpaceRepository repository) {
+        this(repository,
+                TimeUnit.SECONDS.toNanos(Long.getLong("kameluno.idleTimeout", 1800)),
+                TimeUnit.SECONDS.toNanos(Long.getLong("kameluno.finishedGrace", 60)));
+        timers = true;
+    }
+
+    // Without the timers, reap() has to be called by the owner
+    public Lifecycle(SpaceRepository repository, long idleTimeout, long finishedGrace) {
+        this.repository = repository;
+        this.idleTimeout = idleTimeout;
+        this.finishedGrace = finishedGrace;
+    }
+
+    // Start tracking a lobby or game that was published in the repository
+    public Entry register(Kind kind, String id, MailboxSpace space, Runnable onReap) {
+        Entry entry = new Entry(kind, id, space, onReap);
+        Entry replaced = entries.put(entry.name(), entry);
+
+        // A new game in the same lobby replaces the old one
+        if (replaced != null) {
+            cancel(replaced);
+            replaced.space.close();
+        }
+
+        if (timers) {
+            checkIn(entry, idleTimeout);
+
+            // The grace period starts when the game is done (+1 as it has to be over, not just reached)
+            if (kind == Kind.GAME) space.whenClosed(() -> checkIn(entry, finishedGrace + 1));
+        }
+
+        return entry;
+    }
+
+    // Look at every lobby and game and reap the ones that are no longer used
+    public void reap() {
+        long now = System.nanoTime();
+
+        for (Entry entry : entries.values())
+            if (unused(entry, now)) reap(entry);
+    }
+
+    private boolean unused(Entry entry, long now) {
+        boolean idle = now - entry.space.lastActivity() > idleTimeout;
+
+        if (entry.kind == Kind.GAME) {
+            if (entry.space.isClosed() && entry.state == State.LIVE) entry.state = State.FINISHED;
+
+            boolean finished = entry.state == State.FINISHED && now - entry.space.closedAt() > finishedGrace;
+            return finished || idle;
+        }
+
+        return idle && !entries.containsKey("game" + entry.id);
+    }
+
+    // Look at the entry after the delay (nanoseconds), replacing its timer
+    private void checkIn(Entry entry, long delay) {
+        TimingWheel.Timeout timer = Execution.schedule(delay, TimeUnit.NANOSECONDS, () -> check(entry));
+        TimingWheel.Timeout old = entry.timer;
+        entry.timer = timer;
+        if (old != null) old.cancel();
+    }
+
+    // Reap the entry if it is no longer used, otherwise set its timer for when it could be
+    private void check(Entry entry) {
+
+        // Reaped or replaced since the timer was set
+        if (entries.get(entry.name()) != entry) return;
+
+        long now = System.nanoTime();
+        if (unused(entry, now)) {
+            reap(entry);
+            return;
+        }
+
+        // Idle but waiting for its game, which checks it when it is reaped
+        long idleIn = entry.space.lastActivity() + idleTimeout - now;
+        if (idleIn < 0) return;
+
+        checkIn(entry, idleIn + 1);
+    }
+
+    // Drop the timer, so a reaped space isn't kept around until it fires
+    private void cancel(Entry entry) {
+        TimingWheel.Timeout timer = entry.timer;
+        if (timer != null) timer.cancel();
+        entry.timer = null;
+    }
+
+    private void reap(Entry entry) {
+        if (!entries.remove(entry.name(), entry)) return;
+
+        entry.state = State.REAPED;
+        cancel(entry);
+        repository.remove(entry.name());
+        entry.space.close();
+        if (entry.onReap != null) entry.onReap.run();
+
+        if (entry.kind == Kind.LOBBY) reapedLobbies.incrementAndGet();
+        else reapedGames.incrementAndGet();
+
+        // The lobby of the game may have only been waiting for it
+        if (entry.kind == Kind.GAME && timers) {
+            Entry lobby = entries.get("lobby" + entry.id);
+            if (lobby != null) check(lobby);
+        }
+    }
+
+    public int liveLobbies() {
+        return count(Kind.LOBBY);
+    }
+
+    public int liveGames() {
+        return count(Kind.GAME);
+    }
+
+    public long reapedLobbies() {
+        return reapedLobbies.get();
+    }
+
+    public long reapedGames() {
+        return reapedGames.get();
+    }
+
+    // The tuples stored in all the live lobbies and games
+    public long tuples() {
+        long tuples = 0;
+        for (Entry entry : entries.values()) tuples += entry.space.size();
+        return tuples;
+    }
+
+    // The commands waiting in the mailboxes of all the live lobbies and games
+    public long pendingCommands() {
+        long pending = 0;
+        for (Entry entry : entries.values()) pending += entry.space.pending();
+        return pending;
+    }
+
+    private int count(Kind kind) {
+        int count = 0;
+        for (Entry entry : entries.values())
+            if (entry.kind == kind) count++;
+        return count;
+    }
+}
@@ -0,0 +1,190 @@
+package server;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  The server log. Logging only puts a record in a bounded ring buffer, a background thread
+ *  formats the records and writes them to System.out in batches, so a game thread never waits for the console
+ *  and the games don't take turns at the stdout lock.
+ *
+ *  Records are structured, an event name and key value pairs, and written one per line like
+ *    2026-01-01T12:00:00.000Z INFO lobby.created lobby=3
+ *
+ *  The level is set with the system property kameluno.log: debug, info (default), warn, error or off.
+ *  An unknown level is logged as a warning and info is used.
+ *  Debug is for the chatty per-card output, wrap it in if (Log.debug()) so nothing is built when it is off.
+ *  The buffer holds kameluno.logBuffer records (default 8192). When it is full new records are dropped
+ *  rather than blocking the caller, and the number dropped is logged and counted as log.dropped (see Metrics).
+ *  A Throwable field is written with its stack trace on the lines after the record.
+ */
+public class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final String levelProperty = System.getProperty("kameluno.log", "info");
+    private static final Level level = parseLevel(levelProperty);
+    private static final BlockingQueue<Record> buffer = new ArrayBlockingQueue<>(Integer.getInteger("kameluno.logBuffer", 8192));
+    private static final LongAdder dropped = Metrics.counter("log.dropped");
+    private static long reported = 0;  // The number of dropped records that have been logged, only used by the writer
+
+    private static final int BATCH = 256;
+
+    static {
+        Thread writer = new Thread(Log::write, "kameluno-log");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Write what is left in the buffer when the server stops
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "kameluno-log-flush"));
+
+        if (!level.name().equalsIgnoreCase(levelProperty.trim()))
+            warn("log.unknownLevel", "kameluno.log", levelProperty, "using", level);
+    }
+
+    private static Level parseLevel(String property) {
+        try {
+            return Level.valueOf(property.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    // A record waiting to be written, the fields are only turned into text by the writer
+    private static class Record {
+        final long time = System.currentTimeMillis();
+        final Level level;
+        final String event;
+        final Object[] fields;
+
+        Record(Level level, String event, Object[] fields) {
+            this.level = level;
+            this.event = event;
+            this.fields = fields;
+        }
+    }
+
+    public static boolean enabled(Level level) {
+        return level.compareTo(Log.level) >= 0 && level != Level.OFF;
+    }
+
+    public static boolean debug() {
+        return enabled(Level.DEBUG);
+    }
+
+    // fields are key value pairs, e.g. Log.info("lobby.created", "lobby", id)
+    public static void debug(String event, Object... fields) {
+        log(Level.DEBUG, event, fields);
+    }
+
+    public static void info(String event, Object... fields) {
+        log(Level.INFO, event, fields);
+    }
+
+    public static void warn(String event, Object... fields) {
+        log(Level.WARN, event, fields);
+    }
+
+    public static void error(String event, Object... fields) {
+        log(Level.ERROR, event, fields);
+    }
+
+    public static void log(Level level, String event, Object... fields) {
+        if (!enabled(level)) return;
+        if (!buffer.offer(new Record(level, event, fields))) dropped.increment();
+    }
+
+    // Wait for records and write them a batch at a time
+    private static void write() {
+        List<Record> batch = new ArrayList<>(BATCH);
+        StringBuilder text = new StringBuilder();
+
+        while (true) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.drainTo(batch, BATCH - 1);
+            print(batch, text);
+        }
+    }
+
+    private static synchronized void flush() {
+        List<Record> batch = new ArrayList<>();
+        buffer.drainTo(batch);
+        print(batch, new StringBuilder());
+    }
+
+    private static synchronized void print(List<Record> batch, StringBuilder text) {
+        text.setLength(0);
+        for (Record record : batch) format(record, text);
+
+        long lost = dropped.sum() - reported;
+        if (lost > 0) {
+            reported += lost;
+            format(new Record(Level.WARN, "log.dropped", new Object[]{ "records", lost }), text);
+        }
+
+        // System.out is looked up every time, so it can be redirected while the server runs
+        PrintStream out = System.out;
+        out.print(text);
+        out.flush();
+        batch.clear();
+    }
+
+    private static void format(Record record, StringBuilder text) {
+        text.append(Instant.ofEpochMilli(record.time)).append(' ')
+                .append(record.level).append(' ')
+                .append(record.event);
+
+        Object[] fields = record.fields;
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            text.append(' ').append(fields[i]).append('=');
+            appendValue(fields[i + 1], text);
+        }
+
+        text.append('\n');
+
+        for (int i = 1; i < fields.length; i += 2)
+            if (fields[i] instanceof Throwable) appendStackTrace((Throwable) fields[i], text);
+    }
+
+    private static void appendStackTrace(Throwable throwable, StringBuilder text) {
+        StringWriter trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace));
+        text.append(trace);
+    }
+
+    // Values with spaces, quotes or equal signs are quoted
+    private static void appendValue(Object value, StringBuilder text) {
+        String string = value instanceof Object[] ? Arrays.toString((Object[]) value) : String.valueOf(value);
+
+        boolean quote = string.isEmpty();
+        for (int i = 0; i < string.length() && !quote; i++) {
+            char c = string.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=';
+        }
+
+        if (!quote) {
+            text.append(string);
+            return;
+        }
+
+        text.append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') text.append('\\');
+            text.append(c);
+        }
+        text.append('"');
+    }
+}
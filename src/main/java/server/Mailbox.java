@@ -0,0 +1,82 @@
+package server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *  The inbox of a lobby or game.
+ *  Messages are handled one at a time in the order they were posted, so the handler's state needs no lock,
+ *  but without a thread of its own: when messages are waiting the mailbox is run on the shared executor
+ *  (see Execution) and gives the thread back once it is empty or has handled a batch.
+ */
+public class Mailbox {
+
+    // Handles the messages of a mailbox, never called by two threads at once
+    public interface Handler {
+        void handle(Object[] message) throws InterruptedException;
+    }
+
+    private static final int BATCH = 64;  // Messages handled before giving other mailboxes a turn
+
+    private final ConcurrentLinkedQueue<Object[]> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Executor executor;
+    private volatile Handler handler;  // Null until started, messages are kept until then
+    private volatile boolean closed = false;
+
+    public Mailbox() {
+        this(Execution.executor());
+    }
+
+    public Mailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void post(Object[] message) {
+        if (closed) return;
+
+        messages.add(message);
+        schedule();
+    }
+
+    // Start handling the messages, including the ones posted before
+    public void start(Handler handler) {
+        this.handler = handler;
+        schedule();
+    }
+
+    // Stop handling messages and drop the waiting ones
+    public void close() {
+        closed = true;
+        messages.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    private void schedule() {
+        if (handler != null && !closed && scheduled.compareAndSet(false, true))
+            executor.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            Object[] message;
+            for (int i = 0; i < BATCH && !closed && (message = messages.poll()) != null; i++)
+                handler.handle(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            Log.error("mailbox.failed", "error", e);
+        } finally {
+            scheduled.set(false);
+            if (!messages.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package server;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.Space;
+import org.jspace.TemplateField;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+A space whose incoming commands go to a Mailbox instead of being stored as tuples.
+Which tuples are commands is up to the subclass (see isCommand). Everything else is
+stored in the wrapped space, so clients using a RemoteSpace see no difference.
+ */
+public abstract class MailboxSpace implements Space {
+
+    private final Space space;  // The tuples that are not commands
+    private final Mailbox mailbox = new Mailbox();  // The commands
+    private volatile long lastActivity = System.nanoTime();  // When the last command arrived (System.nanoTime)
+    private volatile boolean closed = false;
+    private volatile long closedAt;  // When the space was closed (System.nanoTime), any value can be a time
+    private final List<Runnable> onClose = new CopyOnWriteArrayList<>();  // See whenClosed
+
+    protected MailboxSpace(Space space) {
+        this.space = space;
+    }
+
+    // True if the tuple is a command for the mailbox
+    protected abstract boolean isCommand(Object[] fields);
+
+    // Start handing the commands to the handler, commands that arrived before are kept for it
+    public void start(Mailbox.Handler handler) {
+        mailbox.start(handler);
+    }
+
+    // Post a command that did not come from a client, e.g. a delayed event
+    public void post(Object... command) {
+        mailbox.post(command);
+    }
+
+    // Stop handling commands
+    public void close() {
+        // closedAt is written first, whoever sees closed sees it
+        if (!closed) {
+            closedAt = System.nanoTime();
+            closed = true;
+        }
+        mailbox.close();
+
+        // Whoever removes a task runs it, so it runs once even if whenClosed is called at the same time
+        for (Runnable task : onClose)
+            if (onClose.remove(task)) task.run();
+    }
+
+    // Run the task once the space is closed, right away if it already is
+    public void whenClosed(Runnable task) {
+        onClose.add(task);
+        if (isClosed() && onClose.remove(task)) task.run();
+    }
+
+    public boolean isClosed() {
+        return mailbox.isClosed();
+    }
+
+    // The number of commands waiting to be handled
+    public int pending() {
+        return mailbox.size();
+    }
+
+    // When the last command arrived, in System.nanoTime
+    public long lastActivity() {
+        return lastActivity;
+    }
+
+    // When the space was closed, in System.nanoTime. Only valid if isClosed()
+    public long closedAt() {
+        return closedAt;
+    }
+
+    // Put a tuple that replaces the unread tuples with the same first two fields, see IndexedSpace.putLatest
+    public boolean putLatest(Object... fields) throws InterruptedException {
+        if (space instanceof IndexedSpace) return ((IndexedSpace) space).putLatest(fields);
+
+        // Any other space has to be searched for them
+        TemplateField[] template = new TemplateField[fields.length];
+        for (int i = 0; i < fields.length; i++)
+            template[i] = i < 2 ? new ActualField(fields[i]) : new FormalField(fields[i].getClass());
+        space.getAll(template);
+
+        return space.put(fields);
+    }
+
+    // Put (recipient, fields...) for every recipient, stored once if the inner space can, see IndexedSpace.broadcast
+    public boolean broadcast(Object[] recipients, Object... fields) throws InterruptedException {
+        if (space instanceof IndexedSpace) return ((IndexedSpace) space).broadcast(recipients, fields);
+
+        for (Object recipient : recipients) {
+            Object[] tuple = new Object[fields.length + 1];
+            tuple[0] = recipient;
+            System.arraycopy(fields, 0, tuple, 1, fields.length);
+            space.put(tuple);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean put(Object... fields) throws InterruptedException {
+        if (isCommand(fields)) {
+            lastActivity = System.nanoTime();
+            mailbox.post(fields);
+            return true;
+        }
+
+        return space.put(fields);
+    }
+
+    @Override
+    public int size() {
+        return space.size();
+    }
+
+    @Override
+    public Object[] get(TemplateField... fields) throws InterruptedException {
+        return space.get(fields);
+    }
+
+    @Override
+    public Object[] getp(TemplateField... fields) throws InterruptedException {
+        return space.getp(fields);
+    }
+
+    @Override
+    public List<Object[]> getAll(TemplateField... fields) throws InterruptedException {
+        return space.getAll(fields);
+    }
+
+    @Override
+    public Object[] query(TemplateField... fields) throws InterruptedException {
+        return space.query(fields);
+    }
+
+    @Override
+    public Object[] queryp(TemplateField... fields) throws InterruptedException {
+        return space.queryp(fields);
+    }
+
+    @Override
+    public List<Object[]> queryAll(TemplateField... fields) throws InterruptedException {
+        return space.queryAll(fields);
+    }
+}
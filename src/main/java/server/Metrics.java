@@ -0,0 +1,152 @@
+package server;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ *  The server's counters, latency histograms and gauges, by name. All of them are attributes of the
+ *  MBean kameluno:type=Metrics, so they can be watched with e.g. jconsole or VisualVM while the server runs.
+ *  * counters (LongAdder): e.g. requests, game.commands. The attribute is the count
+ *  * histograms (Histogram, nanoseconds): e.g. request.serve, game.action. The attributes are
+ *    name.count, and name.p50, name.p99, name.p999, name.max and name.mean in microseconds
+ *  * gauges: e.g. games.live, tuples. Read when the attribute is read, so they cost nothing in between
+ *
+ *  Hot paths keep the counter or histogram in a static field, so recording never looks up the name.
+ */
+public class Metrics {
+
+    public static final String MBEAN_NAME = "kameluno:type=Metrics";
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private static final String[] HISTOGRAM_ATTRIBUTES = { "count", "p50", "p99", "p999", "max", "mean" };
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(MBEAN_NAME));
+        } catch (JMException e) {
+            Log.warn("metrics.noJmx", "error", e);
+        }
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    // A gauge with the same name is replaced
+    public static void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    // The current value of every metric by attribute name, e.g. for printing them
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> values = new TreeMap<>();
+        for (String name : attributeNames()) values.put(name, value(name));
+        return values;
+    }
+
+    private static List<String> attributeNames() {
+        List<String> names = new ArrayList<>(counters.keySet());
+        names.addAll(gauges.keySet());
+        for (String name : histograms.keySet())
+            for (String attribute : HISTOGRAM_ATTRIBUTES) names.add(name + "." + attribute);
+        return names;
+    }
+
+    // null if there is no such attribute
+    private static Object value(String attribute) {
+        LongAdder counter = counters.get(attribute);
+        if (counter != null) return counter.sum();
+
+        LongSupplier gauge = gauges.get(attribute);
+        if (gauge != null) return gauge.getAsLong();
+
+        int dot = attribute.lastIndexOf('.');
+        if (dot < 0) return null;
+
+        Histogram histogram = histograms.get(attribute.substring(0, dot));
+        if (histogram == null) return null;
+
+        switch (attribute.substring(dot + 1)) {
+            case "count": return histogram.count();
+            case "p50": return histogram.percentile(0.50) / 1000.0;
+            case "p99": return histogram.percentile(0.99) / 1000.0;
+            case "p999": return histogram.percentile(0.999) / 1000.0;
+            case "max": return histogram.max() / 1000.0;
+            case "mean": return histogram.mean() / 1000.0;
+            default: return null;
+        }
+    }
+
+    // The metrics as read only MBean attributes, the list of attributes grows as metrics are added
+    static class Bean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = value(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Object value = value(attribute);
+                if (value != null) list.add(new Attribute(attribute, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            // There are no operations, JMX clients expect this for an unknown one
+            throw new ReflectionException(new NoSuchMethodException(actionName), "Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : attributeNames()) {
+                boolean micros = histograms.containsKey(name.substring(0, Math.max(0, name.lastIndexOf('.'))))
+                        && !name.endsWith(".count");
+                attributes.add(new MBeanAttributeInfo(name, micros ? "double" : "long",
+                        micros ? name + " in microseconds" : name, true, false, false));
+            }
+
+            return new MBeanInfo(Metrics.class.getName(), "KamelUno server metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
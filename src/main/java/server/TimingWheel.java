@@ -0,0 +1,229 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ *  A hierarchical timing wheel for the delayed events of all lobbies and games: turn deadlines,
+ *  delayed board updates and idle timeouts. Scheduling and cancelling are O(1) however many timeouts
+ *  are pending, there is no heap to keep in order like in a ScheduledThreadPoolExecutor.
+ *
+ *  Time moves in ticks of kameluno.tick milliseconds (default 10), so a timeout fires up to a tick late.
+ *  There are LEVELS wheels of SLOTS slots. The first has a slot per tick, every wheel after it a slot per turn
+ *  of the one before, so 4 wheels of 64 slots cover 64^4 ticks (about 46 hours at 10 ms), anything later waits
+ *  in the last wheel and is put back when its slot comes around. When a wheel has turned once, the next slot of
+ *  the wheel above is emptied into it (the cascade), that is the only time a timeout moves.
+ *
+ *  A single daemon thread turns the wheels. It never runs the tasks itself, they go to the executor
+ *  (see Execution), so a slow task can't hold up other timeouts.
+ *  Other threads only ever add to a queue the wheel thread empties every tick, the slots are only touched by it.
+ */
+public class TimingWheel {
+
+    static final int LEVELS = 4;
+    static final int BITS = 6;
+    static final int SLOTS = 1 << BITS;
+    private static final long MAX_TICKS = 1L << (BITS * LEVELS);
+
+    // A scheduled task, cancel it with cancel()
+    public static class Timeout {
+        private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+
+        final TimingWheel wheel;
+        final long deadline;  // In ticks
+        final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // The slot it is in, only used by the wheel thread
+        Timeout previous, next;
+        Slot slot;
+
+        Timeout(TimingWheel wheel, long deadline, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        // Returns false if it already ran or was cancelled
+        // The wheel thread takes it out of its slot on the next tick
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+    }
+
+    // The timeouts of a slot as a doubly linked list, so one can be removed in constant time
+    private static class Slot {
+        Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) head = timeout;
+            else tail.next = timeout;
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous == null) head = timeout.next;
+            else timeout.previous.next = timeout.next;
+            if (timeout.next == null) tail = timeout.previous;
+            else timeout.next.previous = timeout.previous;
+            timeout.previous = timeout.next = null;
+            timeout.slot = null;
+        }
+
+        // Empty the slot and return its timeouts
+        Timeout takeAll() {
+            Timeout all = head;
+            head = tail = null;
+            return all;
+        }
+    }
+
+    private final long tickNanos;
+    private final Executor executor;
+    private final LongSupplier clock;  // System.nanoTime, or the time of a test
+    private final Slot[][] wheels = new Slot[LEVELS][SLOTS];
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final long start;
+    private long tick = 0;  // The ticks that have passed, only used by the wheel thread
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    public TimingWheel(long tick, TimeUnit unit, Executor executor, String name) {
+        this(unit.toNanos(tick), executor, System::nanoTime);
+
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // A wheel without a thread, the ticks pass when advance is called, e.g. by a test with its own clock
+    TimingWheel(long tickNanos, Executor executor, LongSupplier clock) {
+        this.tickNanos = Math.max(1, tickNanos);
+        this.executor = executor;
+        this.clock = clock;
+        this.start = clock.getAsLong();
+        for (Slot[] wheel : wheels)
+            for (int i = 0; i < SLOTS; i++) wheel[i] = new Slot();
+    }
+
+    // Run the task on the executor after the delay
+    public Timeout schedule(long delay, TimeUnit unit, Runnable task) {
+        // Tick n is handed over at start + n ticks, so rounding up never fires early
+        long due = clock.getAsLong() - start + unit.toNanos(Math.max(0, delay));
+        long deadline = (due + tickNanos - 1) / tickNanos;
+
+        Timeout timeout = new Timeout(this, Math.max(1, deadline), task);
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    // The ticks that have passed, only for the thread that advances the wheel
+    long tick() {
+        return tick;
+    }
+
+    // The timeouts that haven't run or been cancelled yet
+    public int pending() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (true) {
+            long next = start + (tick + 1) * tickNanos;
+            long wait = next - clock.getAsLong();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            try {
+                advance();
+            } catch (RuntimeException e) {
+                Log.error("timingWheel.failed", "error", e);
+            }
+        }
+    }
+
+    // Move to the next tick and hand over the timeouts that are due. Only called by one thread at a time
+    void advance() {
+        removeCancelled();
+
+        tick++;
+
+        // Every time a wheel has turned, bring the next slot of the wheel above down
+        for (int level = 1; level < LEVELS && (tick & ((1L << (BITS * level)) - 1)) == 0; level++)
+            cascade(level);
+
+        // New ones after the cascade, so one due now lands in the slot that is emptied next
+        addNew();
+
+        Timeout timeout = wheels[0][(int) (tick & (SLOTS - 1))].takeAll();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.previous = timeout.next = null;
+            timeout.slot = null;
+
+            if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                pending.decrementAndGet();
+                executor.execute(timeout.task);
+            }
+            timeout = next;
+        }
+    }
+
+    private void cascade(int level) {
+        Timeout timeout = wheels[level][(int) ((tick >>> (BITS * level)) & (SLOTS - 1))].takeAll();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void addNew() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null)
+            if (!timeout.isCancelled()) insert(timeout);
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            pending.decrementAndGet();
+
+            // Not in a slot yet if it was cancelled before the wheel thread got to it, addNew skips those
+            if (timeout.slot != null) timeout.slot.remove(timeout);
+        }
+    }
+
+    // Put the timeout in the slot of the lowest wheel that reaches its deadline
+    private void insert(Timeout timeout) {
+        long due = timeout.deadline;
+
+        // Late, it goes in the slot that is emptied this tick
+        if (due < tick) due = tick;
+
+        // Too far away for the wheels, it goes around the last wheel until it is close enough
+        if (due - tick >= MAX_TICKS) due = tick + MAX_TICKS - 1;
+
+        int level = 0;
+        while (level < LEVELS - 1 && due - tick >= 1L << (BITS * (level + 1))) level++;
+
+        wheels[level][(int) ((due >>> (BITS * level)) & (SLOTS - 1))].add(timeout);
+    }
+}
@@ -0,0 +1,31 @@
+package chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyQueryTest {
+
+    @Test
+    void playerBoundsAreClamped() {
+        LobbyQuery query = LobbyQuery.parse("minPlayers=1000&maxPlayers=2147483647");
+        assertEquals(LobbyRegistry.MAX_PLAYERS, query.minPlayers);
+        assertEquals(LobbyRegistry.MAX_PLAYERS, query.maxPlayers);
+    }
+
+    @Test
+    void equivalentQueriesShareTheirFilter() {
+        assertEquals(LobbyQuery.parse("").filterKey(), LobbyQuery.parse("maxPlayers=99").filterKey());
+        assertEquals(LobbyQuery.parse("minPlayers=5").filterKey(), LobbyQuery.parse("minPlayers=6").filterKey());
+        assertNotEquals(LobbyQuery.parse("maxPlayers=4").filterKey(), LobbyQuery.parse("").filterKey());
+    }
+
+    @Test
+    void badValuesAreIgnored() {
+        LobbyQuery query = LobbyQuery.parse("minPlayers=-3&maxPlayers=x&page=&size=0&unknown=1");
+        assertEquals(0, query.minPlayers);
+        assertEquals(LobbyRegistry.MAX_PLAYERS, query.maxPlayers);
+        assertEquals(0, query.page);
+        assertEquals(Integer.MAX_VALUE, query.size);
+    }
+}
@@ -0,0 +1,48 @@
+package chat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LobbyRegistryTest {
+
+    private final LobbyRegistry registry = new LobbyRegistry();
+
+    private LobbyRegistry.Lobby full() {
+        LobbyRegistry.Lobby lobby = registry.create();
+        registry.add(lobby);
+        while (registry.join(lobby)) { }
+        return lobby;
+    }
+
+    @Test
+    void leavingFreesASeat() {
+        LobbyRegistry.Lobby lobby = full();
+        assertFalse(registry.join(lobby));
+
+        assertTrue(registry.leave(lobby));
+        assertEquals(LobbyRegistry.MAX_PLAYERS - 1, lobby.players.get());
+        assertTrue(registry.join(lobby));
+        assertFalse(registry.join(lobby));
+    }
+
+    @Test
+    void neverBelowTheCreator() {
+        LobbyRegistry.Lobby lobby = full();
+        for (int i = 1; i < LobbyRegistry.MAX_PLAYERS; i++) assertTrue(registry.leave(lobby));
+
+        assertFalse(registry.leave(lobby));
+        assertEquals(1, lobby.players.get());
+    }
+
+    @Test
+    void listingSeesTheFreedSeat() {
+        LobbyRegistry.Lobby lobby = full();
+        String id = "" + lobby.id;
+        assertEquals(0, registry.list(LobbyQuery.parse("open")).length);
+
+        registry.leave(lobby);
+        assertArrayEquals(new Object[]{ id }, registry.list(LobbyQuery.parse("open")));
+        assertArrayEquals(new Object[]{ id }, registry.list(LobbyQuery.parse("maxPlayers=" + (LobbyRegistry.MAX_PLAYERS - 1))));
+    }
+}
@@ -0,0 +1,156 @@
+package game;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.SpaceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameLogTest {
+
+    private static final String[] PLAYERS = { "Mark", "Talha", "Volkan", "Mikkel" };
+
+    @TempDir
+    Path dir;
+
+    private GameLog.Journal journal;
+
+    @AfterEach
+    void close() throws InterruptedException {
+        if (journal != null) journal.log.close();
+    }
+
+    private GameLog.Journal restart() throws IOException, InterruptedException {
+        if (journal != null) journal.log.close();
+        journal = GameLog.Journal.open(dir, 1 << 16);
+        return journal;
+    }
+
+    @Test
+    void keysContinueAfterRestart() throws Exception {
+        restart();
+        GameLog first = journal.start("game1", 1, PLAYERS);
+        GameLog second = journal.start("game2", 2, PLAYERS);
+        assertEquals(1, first.key);
+        assertEquals(2, second.key);
+        first.closed();
+
+        // Only the open game is built back, and the ids of both are in the log
+        restart();
+        assertEquals(1, journal.replayed.size());
+        assertEquals("game2", journal.replayed.get(2).gameId);
+        assertEquals(3, journal.start("game1", 3, PLAYERS).key);
+
+        restart();
+        assertEquals(2, journal.replayed.size());
+        assertEquals(4, journal.start("game3", 4, PLAYERS).key);
+    }
+
+    @Test
+    void replayBuildsTheLiveGameBack() throws Exception {
+        int refusedBeforeMissingUno = 0;
+        for (long seed : new long[]{ 1, 42, 20260101, 7, 99 }) {
+            restart();
+            GameSpace space = new GameSpace();
+            GameLog log = journal.start("game" + seed, seed, PLAYERS);
+            GameHandler live = new GameHandler(new SpaceRepository(), "game" + seed, space, PLAYERS, seed, log);
+
+            refusedBeforeMissingUno += play(live, space);
+
+            GameHandler replayed = restart().replayed.get(log.key);
+            assertNotNull(replayed);
+            assertSameState(live, replayed, "seed " + seed);
+        }
+        assertTrue(refusedBeforeMissingUno > 0);
+    }
+
+    // Play turns until someone could win, so the game is still open in the log. Uses both the pipelined "turn"
+    // and, when it is refused, the old "action" and "ended", calls UNO some of the time and missing UNO on the others.
+    // Sometimes a refused play comes before the missing UNO, it must not close the window for it.
+    // Returns how many times that happened
+    private static int play(GameHandler game, GameSpace space) throws InterruptedException {
+        int refusedBeforeMissingUno = 0;
+
+        for (String player : PLAYERS) space.put(player, "ready");
+        for (String player : PLAYERS) space.get(new ActualField(player), new ActualField("allReady"));
+
+        for (int turn = 0; turn < 200; turn++) {
+            Object[] take = space.get(new FormalField(String.class), new ActualField("take"), new FormalField(String.class));
+            assertEquals("alive", take[2]);
+
+            // Read after the game put the "take", so it is done changing the state for now
+            int player = game.currentPlayer;
+            String id = PLAYERS[player];
+            assertEquals(id, take[0]);
+            if (game.hands[player].size() == 1 && game.playerHasMoves(player)) return refusedBeforeMissingUno;
+
+            if (game.missingUNO && turn % 3 == 0) {
+                String previous = PLAYERS[game.previousPlayer];
+                space.put(id, "taken", "!");
+                space.put(id, "action", action(missingCard(game, player)));
+                assertEquals("invalid", space.get(new ActualField(id), new FormalField(String.class))[1]);
+                space.put(id, "missingUNO");
+
+                space.put(id, "action", action(game.playableCard(player)));
+                assertEquals("success", space.get(new ActualField(id), new FormalField(String.class))[1]);
+                assertNotNull(space.getp(new ActualField(id), new ActualField("UNO"), new ActualField(previous), new ActualField(id)));
+                space.put(id, "ended");
+                refusedBeforeMissingUno++;
+                continue;
+            }
+
+            if (game.missingUNO) space.put(id, "missingUNO");
+
+            boolean uno = game.hands[player].size() == 2 && turn % 2 == 0;
+            space.put(id, "turn", action(game.playableCard(player)), uno ? "UNO" : "");
+            if (space.get(new ActualField(id), new ActualField("turned"), new FormalField(String.class))[2].equals("invalid")) {
+                // The penalty changed the hand, act on the new one
+                space.put(id, "action", action(game.playableCard(player)));
+                assertEquals("success", space.get(new ActualField(id), new FormalField(String.class))[1]);
+                space.put(id, "ended");
+            }
+        }
+        fail("Nobody got down to one card");
+        return refusedBeforeMissingUno;
+    }
+
+    // A card of the game the player doesn't have, playing it is refused
+    private static int missingCard(GameHandler game, int player) {
+        for (int card : Engine.CARDS)
+            if (!game.hands[player].contains(card)) return card;
+        throw new AssertionError("The player has every card");
+    }
+
+    private static String action(int card) {
+        return WireCodec.JSON.encodeAction(card >= 0 ? new Action(Actions.PLAY, Card.of(card)) : new Action(Actions.DRAW, null));
+    }
+
+    private static void assertSameState(GameHandler live, GameHandler replayed, String game) {
+        for (int player = 0; player < PLAYERS.length; player++)
+            for (int card = 0; card < Card.IDS; card++)
+                assertEquals(live.hands[player].count(card), replayed.hands[player].count(card), game + " player " + player + " card " + card);
+
+        assertEquals(live.topCard, replayed.topCard, game);
+        assertEquals(live.currentPlayer, replayed.currentPlayer, game);
+        assertEquals(live.previousPlayer, replayed.previousPlayer, game);
+        assertEquals(live.reverse, replayed.reverse, game);
+        assertEquals(live.skipNextPlayer, replayed.skipNextPlayer, game);
+        assertEquals(live.penalty, replayed.penalty, game);
+        assertEquals(live.missingUNO, replayed.missingUNO, game);
+        assertEquals(live.UNO, replayed.UNO, game);
+        assertEquals(live.gameStarted, replayed.gameStarted, game);
+        assertEquals(live.turnTaken, replayed.turnTaken, game);
+        assertEquals(live.turnDone, replayed.turnDone, game);
+        assertEquals(live.deck.pileSize(), replayed.deck.pileSize(), game);
+        assertEquals(live.deck.stackSize(), replayed.deck.stackSize(), game);
+
+        // The same cards come next
+        for (int i = 0; i < 20; i++) assertEquals(live.drawCard(), replayed.drawCard(), game + " draw " + i);
+    }
+}
@@ -0,0 +1,105 @@
+package game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every payload survives a round trip through both codecs, and garbage from a client is refused, never thrown
+class WireCodecTest {
+
+    private static final Card RED_3 = Card.of(Card.idOf("Red", "3"));
+    private static final Card BLACK_DRAW = Card.of(Card.idOf("Black", "Draw"));
+
+    @Test
+    void actionsRoundTrip() {
+        for (WireCodec codec : WireCodec.CODECS) {
+            Action play = codec.decodeAction(codec.encodeAction(new Action(Actions.PLAY, BLACK_DRAW)));
+            assertEquals(Actions.PLAY, play.getAction(), codec.name());
+            assertEquals(Card.idOf(BLACK_DRAW), Card.idOf(play.getCard()), codec.name());
+
+            Action draw = codec.decodeAction(codec.encodeAction(new Action(Actions.DRAW, null)));
+            assertEquals(Actions.DRAW, draw.getAction(), codec.name());
+            assertNull(draw.getCard(), codec.name());
+        }
+    }
+
+    @Test
+    void boardsAndDeltasRoundTrip() {
+        Map<String, Integer> hands = new HashMap<>();
+        hands.put("Mark", 7);
+        hands.put("Talha", -2);
+
+        for (WireCodec codec : WireCodec.CODECS) {
+            Board board = codec.decodeBoard(codec.encodeBoard(new Board(42, RED_3, hands)));
+            assertEquals(42, board.getSeq(), codec.name());
+            assertEquals(Card.idOf(RED_3), Card.idOf(board.getTopCard()), codec.name());
+            assertEquals(hands, board.getHands(), codec.name());
+
+            BoardDelta delta = codec.decodeDelta(codec.encodeDelta(
+                    new BoardDelta(43, null, hands, new Card[]{ RED_3, BLACK_DRAW }, new Card[0])));
+            assertEquals(43, delta.getSeq(), codec.name());
+            assertNull(delta.getTopCard(), codec.name());
+            assertEquals(hands, delta.getHands(), codec.name());
+            assertEquals(2, delta.getReceived().length, codec.name());
+            assertEquals(Card.idOf(BLACK_DRAW), Card.idOf(delta.getReceived()[1]), codec.name());
+            assertEquals(0, delta.getRemoved().length, codec.name());
+        }
+    }
+
+    @Test
+    void cardsAndHintsRoundTrip() {
+        for (WireCodec codec : WireCodec.CODECS) {
+            assertEquals(Card.idOf(RED_3), Card.idOf(codec.decodeCard(codec.encodeCard(RED_3))), codec.name());
+
+            Card[] cards = codec.decodeCards(codec.encodeCards(new Card[]{ BLACK_DRAW, RED_3 }));
+            assertEquals(2, cards.length, codec.name());
+            assertEquals(Card.idOf(RED_3), Card.idOf(cards[1]), codec.name());
+
+            Hints hints = codec.decodeHints(codec.encodeHints(new Hints(7, new Card[]{ RED_3 }, false)));
+            assertEquals(7, hints.getSeq(), codec.name());
+            assertFalse(hints.canDraw(), codec.name());
+            assertTrue(hints.allows(RED_3), codec.name());
+            assertFalse(hints.allows(BLACK_DRAW), codec.name());
+        }
+    }
+
+    @Test
+    void readActionAcceptsValidPayloads() {
+        for (WireCodec codec : WireCodec.CODECS) {
+            assertNotNull(codec.readAction(codec.encodeAction(new Action(Actions.PLAY, RED_3))), codec.name());
+            assertNotNull(codec.readAction(codec.encodeAction(new Action(Actions.DRAW, null))), codec.name());
+        }
+    }
+
+    @Test
+    void readActionRefusesGarbage() {
+        String[] garbage = {
+                null, "", "null", "{", "[]", "not base64 !!", "////", "{\"action\":\"FLY\"}",
+                "{\"action\":\"PLAY\"}", "{\"action\":\"PLAY\",\"card\":{\"color\":\"Pink\",\"value\":\"3\"}}",
+                "{\"action\":\"PLAY\",\"card\":{}}"
+        };
+
+        for (WireCodec codec : WireCodec.CODECS)
+            for (String payload : garbage)
+                assertNull(codec.readAction(payload), codec.name() + " " + payload);
+    }
+
+    @Test
+    void binaryRefusesOutOfRangeOrdinalsAndCards() {
+        // An action ordinal past the enum, a card id past the last card, and a PLAY without a card
+        assertNull(WireCodec.BINARY.readAction(base64(5, 0xFF)));
+        assertNull(WireCodec.BINARY.readAction(base64(0, 200)));
+        assertNull(WireCodec.BINARY.readAction(base64(0, 0xFF)));
+        assertNull(WireCodec.BINARY.readAction(base64(0)));
+        assertThrows(IllegalArgumentException.class, () -> WireCodec.BINARY.decodeAction(base64(0, 200)));
+    }
+
+    private static String base64(int... bytes) {
+        byte[] raw = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) raw[i] = (byte) bytes[i];
+        return java.util.Base64.getEncoder().withoutPadding().encodeToString(raw);
+    }
+}
@@ -0,0 +1,139 @@
+package server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventLogTest {
+
+    @TempDir
+    Path dir;
+
+    private EventLog log;
+    private final List<Long> positions = new ArrayList<>();
+    private final List<String> records = new ArrayList<>();
+
+    @AfterEach
+    void close() throws InterruptedException {
+        if (log != null) log.close();
+    }
+
+    // (Re)open the log, the records it replays are in positions and records
+    private void open(int segmentSize) throws IOException, InterruptedException {
+        if (log != null) log.close();
+        positions.clear();
+        records.clear();
+        log = EventLog.open(dir, segmentSize, 1, TimeUnit.MILLISECONDS, (position, record) -> {
+            positions.add(position);
+            records.add(StandardCharsets.UTF_8.decode(record).toString());
+        });
+    }
+
+    private long append(String record) throws IOException {
+        return log.append(ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void recordsAreReplayedWhereTheyWere() throws Exception {
+        open(4096);
+        long a = append("a");
+        long b = append("bb");
+        log.awaitDurable(b);
+
+        open(4096);
+        assertEquals(List.of("a", "bb"), records);
+        assertEquals(List.of(a, b), positions);
+        assertEquals(b + 8 + 2, log.position());
+    }
+
+    @Test
+    void tornTailIsZeroedBeforeAppending() throws Exception {
+        open(4096);
+        append("a");
+        append("bb");
+        long end = log.position();
+        log.close();
+        log = null;
+
+        // A record that was being copied when the process died: its checksum is wrong and a whole valid
+        // record is left in its bytes, where the next record after the restart ends
+        ByteBuffer valid = record("evil");
+        ByteBuffer torn = ByteBuffer.allocate(8 + 30);
+        torn.putInt(30).putInt(12345).putInt(0).put(valid).flip();
+        try (FileChannel file = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            file.write(torn, end);
+        }
+
+        open(4096);
+        assertEquals(List.of("a", "bb"), records);
+        assertEquals(end, log.position());
+
+        log.awaitDurable(append("dddd"));
+        open(4096);
+        assertEquals(List.of("a", "bb", "dddd"), records);
+    }
+
+    @Test
+    void segmentsRollAndReleasedOnesAreDeleted() throws Exception {
+        // Two records of 20 bytes (28 with the header) fit a segment
+        open(64);
+        List<Long> written = new ArrayList<>();
+        for (int i = 0; i < 10; i++) written.add(append(String.format("record %-13d", i)));
+        log.awaitDurable(written.get(9));
+
+        assertEquals(5, segments().size());
+        assertEquals((long) written.get(2), positionOf(segments().get(1)));
+
+        // Everything before record 5, the segment with records 4 and 5 stays
+        log.release(written.get(5));
+        log.awaitDurable(append(String.format("record %-13d", 10)));
+        assertEquals(4, segments().size());
+        assertEquals((long) written.get(4), positionOf(segments().get(0)));
+
+        open(64);
+        assertEquals(written.subList(4, 10), positions.subList(0, 6));
+        assertEquals(7, records.size());
+        assertEquals(String.format("record %-13d", 4), records.get(0));
+
+        // Never the segment that is appended to
+        log.release(log.position() + 1000);
+        log.awaitDurable(append(String.format("record %-13d", 11)));
+        assertEquals(1, segments().size());
+    }
+
+    private static ByteBuffer record(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        CRC32C checksum = new CRC32C();
+        checksum.update(bytes);
+        ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+        record.putInt(bytes.length).putInt((int) checksum.getValue()).put(bytes).flip();
+        return record;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static long positionOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - 4));
+    }
+}
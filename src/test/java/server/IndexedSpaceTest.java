@@ -0,0 +1,165 @@
+package server;
+
+import org.jspace.ActualField;
+import org.jspace.FormalField;
+import org.jspace.TemplateField;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedSpaceTest {
+
+    private final IndexedSpace space = new IndexedSpace();
+
+    @Test
+    void oldestMatchFirstAcrossBuckets() throws InterruptedException {
+        space.put("Mark", "board", 1);
+        space.put("Talha", "board", 2);
+        space.put("Mark", "takes", 3);
+        space.put("Mark", "board", 4);
+
+        // Only the first field actual: both of Mark's buckets, oldest first
+        assertEquals(1, space.get(new ActualField("Mark"), new FormalField(String.class), new FormalField(Integer.class))[2]);
+        assertEquals(3, space.get(new ActualField("Mark"), new FormalField(String.class), new FormalField(Integer.class))[2]);
+        assertEquals(4, space.get(new ActualField("Mark"), new FormalField(String.class), new FormalField(Integer.class))[2]);
+        assertEquals(2, space.get(new FormalField(String.class), new FormalField(String.class), new FormalField(Integer.class))[2]);
+        assertEquals(0, space.size());
+    }
+
+    @Test
+    void formalFirstFieldLooksAtEveryPlayer() throws InterruptedException {
+        space.put("Mark", "takes", 1);
+        space.put("Talha", "board", 2);
+        space.put("Talha", "takes", 3);
+
+        Object[] tuple = space.getp(new FormalField(String.class), new ActualField("takes"), new FormalField(Integer.class));
+        assertArrayEquals(new Object[]{ "Mark", "takes", 1 }, tuple);
+        tuple = space.getp(new FormalField(String.class), new ActualField("takes"), new FormalField(Integer.class));
+        assertArrayEquals(new Object[]{ "Talha", "takes", 3 }, tuple);
+        assertNull(space.getp(new FormalField(String.class), new ActualField("takes"), new FormalField(Integer.class)));
+        assertEquals(1, space.size());
+    }
+
+    @Test
+    void blockedGetIsWokenByPut() throws InterruptedException {
+        BlockingQueue<Object[]> got = waitFor(new ActualField("Mark"), new ActualField("board"), new FormalField(Integer.class));
+
+        space.put("Talha", "board", 1);  // Not his, doesn't wake him
+        space.put("Mark", "takes", 2);
+        assertNull(got.poll(100, TimeUnit.MILLISECONDS));
+
+        space.put("Mark", "board", 3);
+        assertArrayEquals(new Object[]{ "Mark", "board", 3 }, got.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void blockedGetsAreWokenByBroadcast() throws InterruptedException {
+        BlockingQueue<Object[]> mark = waitFor(new ActualField("Mark"), new ActualField("takes"), new FormalField(Integer.class));
+        BlockingQueue<Object[]> anyone = waitFor(new FormalField(String.class), new ActualField("turn"), new FormalField(Integer.class));
+
+        space.broadcast(new Object[]{ "Mark", "Talha" }, "takes", 7);
+        assertArrayEquals(new Object[]{ "Mark", "takes", 7 }, mark.poll(5, TimeUnit.SECONDS));
+        assertNull(anyone.poll(100, TimeUnit.MILLISECONDS));
+
+        space.broadcast(new Object[]{ "Talha" }, "turn", 8);
+        assertArrayEquals(new Object[]{ "Talha", "turn", 8 }, anyone.poll(5, TimeUnit.SECONDS));
+
+        // Talha's copy of the first broadcast is still there
+        assertEquals(1, space.size());
+        assertArrayEquals(new Object[]{ "Talha", "takes", 7 }, space.getp(new ActualField("Talha"), new ActualField("takes"), new FormalField(Integer.class)));
+    }
+
+    @Test
+    void getAllWhileRemovingKeepsOrderAndSize() throws InterruptedException {
+        for (int i = 0; i < 10; i++) space.put(i % 2 == 0 ? "Mark" : "Talha", i % 3 == 0 ? "board" : "takes", i);
+
+        List<Object[]> takes = space.getAll(new FormalField(String.class), new ActualField("takes"), new FormalField(Integer.class));
+        assertEquals(6, takes.size());
+        int last = -1;
+        for (Object[] tuple : takes) {
+            assertTrue((Integer) tuple[2] > last);
+            last = (Integer) tuple[2];
+        }
+
+        assertEquals(4, space.size());
+        assertEquals(4, space.queryAll(new FormalField(String.class), new FormalField(String.class), new FormalField(Integer.class)).size());
+        assertEquals(0, space.getAll(new FormalField(String.class), new ActualField("takes"), new FormalField(Integer.class)).size());
+    }
+
+    @Test
+    void groupsAreDroppedAfterWaitersLeave() throws Exception {
+        Thread waiter = new Thread(() -> {
+            try {
+                space.get(new ActualField("request-1"), new ActualField("reply"));
+            } catch (InterruptedException e) {
+                // Gave up
+            }
+        });
+        waiter.start();
+        awaitWaiting(waiter);
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertTrue(groups().isEmpty());
+
+        // And after the tuples are taken
+        space.put("request-2", "reply");
+        space.get(new ActualField("request-2"), new ActualField("reply"));
+        assertTrue(groups().isEmpty());
+    }
+
+    @Test
+    void putLatestReplacesOnlyItsOwnBucket() throws InterruptedException {
+        space.put("Mark", "board", 1);
+        space.put("Mark", "board", 2);
+        space.put("Mark", "takes", 3);
+        space.put("Talha", "board", 4);
+        space.put("Mark", "board", 5, "other size");
+
+        space.putLatest("Mark", "board", 6);
+
+        assertEquals(4, space.size());
+        assertArrayEquals(new Object[]{ "Mark", "board", 6 }, space.getp(new ActualField("Mark"), new ActualField("board"), new FormalField(Integer.class)));
+        assertNull(space.getp(new ActualField("Mark"), new ActualField("board"), new FormalField(Integer.class)));
+        assertNotNull(space.getp(new ActualField("Mark"), new ActualField("takes"), new FormalField(Integer.class)));
+        assertNotNull(space.getp(new ActualField("Talha"), new ActualField("board"), new FormalField(Integer.class)));
+        assertNotNull(space.getp(new ActualField("Mark"), new ActualField("board"), new FormalField(Integer.class), new FormalField(String.class)));
+        assertEquals(0, space.size());
+    }
+
+    // A get on its own thread, the tuple it gets is put in the queue
+    private BlockingQueue<Object[]> waitFor(TemplateField... template) throws InterruptedException {
+        BlockingQueue<Object[]> got = new ArrayBlockingQueue<>(1);
+        Thread thread = new Thread(() -> {
+            try {
+                got.add(space.get(template));
+            } catch (InterruptedException e) {
+                // The test is over
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        awaitWaiting(thread);
+        return got;
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) Thread.sleep(1);
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    // The index of the space, empty once it has no tuples and no waiters
+    private Map<?, ?> groups() throws ReflectiveOperationException {
+        Field groups = IndexedSpace.class.getDeclaredField("groups");
+        groups.setAccessible(true);
+        return (Map<?, ?>) groups.get(space);
+    }
+}
@@ -0,0 +1,144 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The wheel is turned by hand with a clock of its own, the tasks run right away on the advancing thread
+class TimingWheelTest {
+
+    private static final long TICK = 10;  // ns
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final TimingWheel wheel = new TimingWheel(TICK, Runnable::run, now::get);
+
+    // Schedule a task that records the tick it ran at, due the given number of ticks from the wheel's current tick
+    private TimingWheel.Timeout schedule(long ticks, List<Long> ranAt) {
+        now.set(1_000 + wheel.tick() * TICK);
+        return wheel.schedule(ticks * TICK, TimeUnit.NANOSECONDS, () -> ranAt.add(wheel.tick()));
+    }
+
+    private void advance(long ticks) {
+        for (long i = 0; i < ticks; i++) wheel.advance();
+    }
+
+    @Test
+    void firesOnItsTickAcrossCascadeBoundaries() {
+        long[] delays = { 1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 64 * 64 * 64 - 1, 64 * 64 * 64, 64 * 64 * 64 + 1 };
+
+        for (long offset : new long[]{ 0, 1, 63, 4095 }) {
+            // Start at different places of the first two wheels
+            while (wheel.tick() % 4096 != offset) wheel.advance();
+            long from = wheel.tick();
+
+            List<List<Long>> ran = new ArrayList<>();
+            for (long delay : delays) {
+                List<Long> ticks = new ArrayList<>();
+                ran.add(ticks);
+                schedule(delay, ticks);
+            }
+
+            advance(64 * 64 * 64 + 2);
+            for (int i = 0; i < delays.length; i++)
+                assertEquals(List.of(from + delays[i]), ran.get(i), "delay " + delays[i] + " from tick " + from);
+        }
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void lateInsertRunsOnTheNextTick() {
+        advance(100);
+
+        // Scheduled for tick 10 but handed to the wheel at tick 100, e.g. the wheel thread fell behind
+        List<Long> ran = new ArrayList<>();
+        now.set(1_000);
+        wheel.schedule(10 * TICK, TimeUnit.NANOSECONDS, () -> ran.add(wheel.tick()));
+
+        wheel.advance();
+        assertEquals(List.of(101L), ran);
+    }
+
+    @Test
+    void zeroDelayRunsOnTheNextTick() {
+        List<Long> ran = new ArrayList<>();
+        schedule(0, ran);
+        wheel.advance();
+        assertEquals(List.of(1L), ran);
+    }
+
+    @Test
+    void beyondTheLastWheelGoesAroundUntilDue() {
+        long max = 1L << (TimingWheel.BITS * TimingWheel.LEVELS);
+        List<Long> ran = new ArrayList<>();
+        schedule(max + 100, ran);
+        schedule(2 * max + 5, ran);
+
+        advance(max + 99);
+        assertTrue(ran.isEmpty());
+        wheel.advance();
+        assertEquals(List.of(max + 100), ran);
+
+        advance(max - 95);
+        assertEquals(List.of(max + 100, 2 * max + 5), ran);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void cancelledBeforeItsTickNeverRuns() {
+        List<Long> ran = new ArrayList<>();
+        TimingWheel.Timeout early = schedule(5, ran);
+        TimingWheel.Timeout cascaded = schedule(5000, ran);
+        assertTrue(early.cancel());
+        assertFalse(early.cancel());
+
+        wheel.advance();  // Both in their slots, the cancelled one is taken out
+        assertTrue(cascaded.cancel());
+        advance(6000);
+
+        assertTrue(ran.isEmpty());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void cancelAfterExpiryFails() {
+        List<Long> ran = new ArrayList<>();
+        TimingWheel.Timeout timeout = schedule(3, ran);
+        advance(3);
+
+        assertEquals(List.of(3L), ran);
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+        advance(10);
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    void cancelRacingExpiryRunsOrCancelsExactlyOnce() throws InterruptedException {
+        int count = 20_000;
+        AtomicInteger[] runs = new AtomicInteger[count];
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[count];
+        for (int i = 0; i < count; i++) {
+            AtomicInteger run = runs[i] = new AtomicInteger();
+            timeouts[i] = wheel.schedule((1 + i % 50) * TICK, TimeUnit.NANOSECONDS, run::incrementAndGet);
+        }
+
+        boolean[] cancelled = new boolean[count];
+        Thread canceller = new Thread(() -> {
+            for (int i = count - 1; i >= 0; i--) cancelled[i] = timeouts[i].cancel();
+        });
+        canceller.start();
+        advance(60);
+        canceller.join();
+        advance(2);
+
+        for (int i = 0; i < count; i++)
+            assertEquals(cancelled[i] ? 0 : 1, runs[i].get(), "timeout " + i);
+        assertEquals(0, wheel.pending());
+    }
+}